@@ -0,0 +1,8 @@
+package hu.bme.mit.ca.bmc;
+
+public interface BmcListener {
+
+	/* Called on the checking thread after every completed depth */
+	void depthCompleted(BmcStatistics statistics);
+
+}
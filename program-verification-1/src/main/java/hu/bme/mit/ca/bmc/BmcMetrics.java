@@ -0,0 +1,82 @@
+package hu.bme.mit.ca.bmc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Stopwatch;
+
+import hu.bme.mit.theta.solver.Solver;
+
+/*
+ * Counters of a single check, safe to update from the expander workers.
+ * A disabled instance skips the timing and the counting altogether.
+ */
+final class BmcMetrics {
+	private static final BmcMetrics DISABLED = new BmcMetrics(null);
+
+	private final BmcListener listener;
+	private final boolean enabled;
+	private final Stopwatch stopwatch;
+
+	private final LongAdder solverCalls;
+	private final LongAdder satCalls;
+	private final LongAdder solverNanos;
+	private final LongAdder vertices;
+
+	private volatile BmcStatistics last;
+
+	private BmcMetrics(final BmcListener listener) {
+		this.listener = listener;
+		enabled = listener != null;
+		stopwatch = Stopwatch.createStarted();
+		solverCalls = new LongAdder();
+		satCalls = new LongAdder();
+		solverNanos = new LongAdder();
+		vertices = new LongAdder();
+		last = BmcStatistics.empty();
+	}
+
+	public static BmcMetrics create(final BmcListener listener) {
+		if (listener == null) {
+			return DISABLED;
+		} else {
+			return new BmcMetrics(listener);
+		}
+	}
+
+	////
+
+	public boolean checkSat(final Solver solver) {
+		if (!enabled) {
+			return solver.check().isSat();
+		}
+
+		final long start = System.nanoTime();
+		final boolean sat = solver.check().isSat();
+		solverNanos.add(System.nanoTime() - start);
+		solverCalls.increment();
+		if (sat) {
+			satCalls.increment();
+		}
+		return sat;
+	}
+
+	public void verticesCreated(final int count) {
+		if (enabled) {
+			vertices.add(count);
+		}
+	}
+
+	public void depthCompleted(final int depth, final long forwardFrontier, final long backwardFrontier) {
+		if (enabled) {
+			last = new BmcStatistics(depth, stopwatch.elapsed(TimeUnit.MILLISECONDS), solverCalls.sum(),
+					satCalls.sum(), solverNanos.sum(), forwardFrontier, backwardFrontier, vertices.sum());
+			listener.depthCompleted(last);
+		}
+	}
+
+	public BmcStatistics getStatistics() {
+		return last;
+	}
+
+}
@@ -0,0 +1,84 @@
+package hu.bme.mit.ca.bmc;
+
+/*
+ * Immutable snapshot of the progress of a bounded model checker run.
+ */
+public final class BmcStatistics {
+	private static final BmcStatistics EMPTY = new BmcStatistics(0, 0, 0, 0, 0, 0, 0, 0);
+
+	private final int depth;
+	private final long elapsedMillis;
+	private final long solverCalls;
+	private final long satCalls;
+	private final long solverNanos;
+	private final long forwardFrontier;
+	private final long backwardFrontier;
+	private final long vertices;
+
+	BmcStatistics(final int depth, final long elapsedMillis, final long solverCalls, final long satCalls,
+			final long solverNanos, final long forwardFrontier, final long backwardFrontier, final long vertices) {
+		this.depth = depth;
+		this.elapsedMillis = elapsedMillis;
+		this.solverCalls = solverCalls;
+		this.satCalls = satCalls;
+		this.solverNanos = solverNanos;
+		this.forwardFrontier = forwardFrontier;
+		this.backwardFrontier = backwardFrontier;
+		this.vertices = vertices;
+	}
+
+	public static BmcStatistics empty() {
+		return EMPTY;
+	}
+
+	////
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public long getSolverCalls() {
+		return solverCalls;
+	}
+
+	public long getSatCalls() {
+		return satCalls;
+	}
+
+	public long getUnsatCalls() {
+		return solverCalls - satCalls;
+	}
+
+	public long getSolverMillis() {
+		return solverNanos / 1_000_000;
+	}
+
+	/* Paths on the last forward level, or number of feasible paths of the current length */
+	public long getForwardFrontier() {
+		return forwardFrontier;
+	}
+
+	/* Paths on the last backward level, or 1 if a backward path of the current length is feasible */
+	public long getBackwardFrontier() {
+		return backwardFrontier;
+	}
+
+	public long getVertices() {
+		return vertices;
+	}
+
+	////
+
+	@Override
+	public String toString() {
+		return "BmcStatistics{" + "depth=" + depth + ", elapsedMillis=" + elapsedMillis + ", solverCalls="
+				+ solverCalls + ", satCalls=" + satCalls + ", solverMillis=" + getSolverMillis()
+				+ ", forwardFrontier=" + forwardFrontier + ", backwardFrontier=" + backwardFrontier + ", vertices="
+				+ vertices + '}';
+	}
+
+}
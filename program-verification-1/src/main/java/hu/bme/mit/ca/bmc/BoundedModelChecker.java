@@ -3,46 +3,287 @@ package hu.bme.mit.ca.bmc;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import java.util.*;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
-import com.google.common.base.Stopwatch;
-
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
+import hu.bme.mit.ca.common.CancellationToken;
+import hu.bme.mit.ca.common.SolverPool;
 import hu.bme.mit.theta.cfa.CFA;
-import hu.bme.mit.theta.core.stmt.Stmt;
-import hu.bme.mit.theta.core.type.Expr;
-import hu.bme.mit.theta.core.type.booltype.BoolType;
 import hu.bme.mit.theta.solver.Solver;
-import hu.bme.mit.theta.solver.z3.Z3SolverFactory;
 
 public final class BoundedModelChecker implements SafetyChecker {
 
 	private final CFA cfa;
 	private final int bound;
 	private final int timeout;
+	private final SearchStrategy strategy;
+	private final int threads;
+	private final BmcListener listener;
+	private final CancellationToken token;
+
+	private volatile List<CFA.Edge> counterexample;
+	private volatile BmcStatistics statistics;
 
-	private BoundedModelChecker(final CFA cfa, final int bound, final int timeout) {
+	private BoundedModelChecker(final CFA cfa, final int bound, final int timeout, final SearchStrategy strategy,
+			final int threads, final BmcListener listener) {
 		checkArgument(bound >= 0);
 		checkArgument(timeout >= 0);
+		checkArgument(threads >= 1);
+		checkArgument(threads == 1 || strategy != SearchStrategy.INCREMENTAL);
+		checkArgument(getMaxLeases(strategy, threads) <= SolverPool.getDefault().getMaxLive(),
+				"%s threads need more solvers than the pool allows", threads);
 
 		this.cfa = checkNotNull(cfa);
 		this.bound = bound;
 		this.timeout = timeout;
+		this.strategy = checkNotNull(strategy);
+		this.threads = threads;
+		this.listener = listener;
+		this.token = CancellationToken.create();
+		this.counterexample = null;
+		this.statistics = BmcStatistics.empty();
 	}
 
 	public static BoundedModelChecker create(final CFA cfa, final int bound, final int timeout) {
-		return new BoundedModelChecker(cfa, bound, timeout);
+		return create(cfa, bound, timeout, SearchStrategy.BREADTH_FIRST);
+	}
+
+	public static BoundedModelChecker create(final CFA cfa, final int bound, final int timeout,
+			final SearchStrategy strategy) {
+		return create(cfa, bound, timeout, strategy, 1);
+	}
+
+	public static BoundedModelChecker create(final CFA cfa, final int bound, final int timeout,
+			final SearchStrategy strategy, final int threads) {
+		return new BoundedModelChecker(cfa, bound, timeout, strategy, threads, null);
+	}
+
+	/* Metrics are only collected when a listener is given */
+	public static BoundedModelChecker create(final CFA cfa, final int bound, final int timeout,
+			final SearchStrategy strategy, final int threads, final BmcListener listener) {
+		return new BoundedModelChecker(cfa, bound, timeout, strategy, threads, checkNotNull(listener));
+	}
+
+	/* Edges of the error path found by the last check, in execution order */
+	public Optional<List<CFA.Edge>> getCounterexample() {
+		return Optional.ofNullable(counterexample);
+	}
+
+	/* Statistics of the last completed depth, empty if no listener was given */
+	public BmcStatistics getStatistics() {
+		return statistics;
+	}
+
+	/* Stops the running check and every later check of this checker with TIMEOUT */
+	public void cancel() {
+		token.cancel();
 	}
 
 	@Override
 	public SafetyResult check() {
-		final Stopwatch stopwatch = Stopwatch.createStarted();
+		counterexample = null;
+
+		final CancellationToken deadline = token.withTimeout(timeout, TimeUnit.SECONDS);
+		final BmcMetrics metrics = BmcMetrics.create(listener);
+
+		try {
+			switch (strategy) {
+				case INCREMENTAL:
+					return checkIncremental(deadline, metrics);
+				case BIDIRECTIONAL:
+					return checkBidirectional(deadline, metrics);
+				case BREADTH_FIRST:
+				default:
+					return checkBreadthFirst(deadline, metrics);
+			}
+		} catch (final CancellationException e) {
+			return SafetyResult.TIMEOUT;
+		} finally {
+			statistics = metrics.getStatistics();
+		}
+	}
+
+	private SafetyResult checkIncremental(CancellationToken deadline, BmcMetrics metrics) {
+		try (SolverPool.Lease<Solver> lease = SolverPool.getDefault().acquire(deadline)) {
+			return checkIncremental(deadline, metrics, lease.get());
+		}
+	}
+
+	private SafetyResult checkIncremental(CancellationToken deadline, BmcMetrics metrics, Solver solver) {
+		IncrementalPathSearch search = IncrementalPathSearch.create(cfa, solver, deadline, metrics);
+
+		int depth = 0;
+
+		while (!deadline.isCancelled()) {
+			depth++;
+
+			/* 1 */
+			int availablePaths = search.forward(depth);
+			if (availablePaths == 0) {
+				metrics.depthCompleted(depth, 0, 0);
+				return SafetyResult.SAFE;
+			}
+
+			/* 3 */
+			if (search.getErrorPath().isPresent()) {
+				metrics.depthCompleted(depth, availablePaths, 0);
+				counterexample = search.getErrorPath().get();
+				return SafetyResult.UNSAFE;
+			}
+
+			/* 2 */
+			boolean feasibleBW = search.backward(depth);
+			metrics.depthCompleted(depth, availablePaths, feasibleBW ? 1 : 0);
+			if (!feasibleBW) {
+				return SafetyResult.SAFE;
+			}
+		}
+
+		return SafetyResult.TIMEOUT;
+	}
+
+	private SafetyResult checkBidirectional(CancellationToken deadline, BmcMetrics metrics) {
+		FrontierExpander expander = FrontierExpander.create(threads, metrics, deadline);
+
+		try {
+			return checkBidirectional(deadline, metrics, expander);
+		} finally {
+			expander.shutdown();
+		}
+	}
+
+	private SafetyResult checkBidirectional(CancellationToken deadline, BmcMetrics metrics,
+			FrontierExpander expander) {
+		FrontierExpander expanderBW = FrontierExpander.create(threads, metrics, deadline);
+		ExecutorService directions = Executors.newFixedThreadPool(2);
+
+		try (SolverPool.Lease<Solver> lease = SolverPool.getDefault().acquire(deadline)) {
+			return checkBidirectional(deadline, metrics, expander, expanderBW, directions, lease.get());
+		} finally {
+			/* The directions use the solvers of the expanders */
+			FrontierExpander.stop(directions);
+			expanderBW.shutdown();
+		}
+	}
+
+	/*
+	 * The forward and backward trees grow concurrently, one level per round. In round d
+	 * the forward frontier is joined with the backward frontiers of depth d - 1 and d
+	 * where their locations meet, so error paths of length 2d - 1 and 2d are found
+	 * after only d levels in each direction.
+	 */
+	private SafetyResult checkBidirectional(CancellationToken deadline, BmcMetrics metrics,
+			FrontierExpander expander, FrontierExpander expanderBW, ExecutorService directions, Solver solver) {
+		int depth = 0;
+
+		/* Forward */
+		PathTree tree = PathTree.forward(cfa);
+		ImmutableIntArray queue = ImmutableIntArray.of(tree.getRoot());
+
+		/* Backward */
+		PathTree treeBW = PathTree.backward(cfa);
+		ImmutableIntArray queueBW = ImmutableIntArray.of(treeBW.getRoot());
+		ImmutableIntArray prevQueueBW;
+
+		while (!deadline.isCancelled()) {
+			depth++;
+
+			/* The trees are separate, the expanders only share the unfolding of paths */
+			ImmutableIntArray frontier = queue;
+			ImmutableIntArray frontierBW = queueBW;
+			Future<ImmutableIntArray> forward = directions.submit(() -> expander.expand(tree, frontier, deadline));
+			Future<ImmutableIntArray> backward = directions
+					.submit(() -> expanderBW.expand(treeBW, frontierBW, deadline));
+
+			queue = getUnchecked(forward);
+			prevQueueBW = queueBW;
+			queueBW = getUnchecked(backward);
+
+			metrics.depthCompleted(depth, queue.length(), queueBW.length());
+
+			/* 1 */
+			if (queue.isEmpty()) {
+				return SafetyResult.SAFE;
+			}
+
+			/* 2 */
+			if (queueBW.isEmpty()) {
+				return SafetyResult.SAFE;
+			}
+
+			/* 3 */
+			Optional<List<CFA.Edge>> errorPath = meet(tree, queue, treeBW, prevQueueBW, solver, deadline, metrics);
+			if (!errorPath.isPresent()) {
+				errorPath = meet(tree, queue, treeBW, queueBW, solver, deadline, metrics);
+			}
+
+			if (errorPath.isPresent()) {
+				counterexample = errorPath.get();
+				return SafetyResult.UNSAFE;
+			}
+		}
+
+		return SafetyResult.TIMEOUT;
+	}
+
+	/* First feasible joined path of a forward and a backward frontier vertex at the same location */
+	private Optional<List<CFA.Edge>> meet(PathTree tree, ImmutableIntArray frontier, PathTree treeBW,
+			ImmutableIntArray frontierBW, Solver solver, CancellationToken deadline, BmcMetrics metrics) {
+		ListMultimap<CFA.Loc, Integer> locToVertexBW = ArrayListMultimap.create();
+		for (int i = 0; i < frontierBW.length(); i++) {
+			locToVertexBW.put(treeBW.getLoc(frontierBW.get(i)), frontierBW.get(i));
+		}
+
+		for (int i = 0; i < frontier.length(); i++) {
+			int item = frontier.get(i);
+			for (int itemBW : locToVertexBW.get(tree.getLoc(item))) {
+				deadline.throwIfCancelled();
+				List<CFA.Edge> edgePath = tree.getEdgePath(item);
+				edgePath.addAll(treeBW.getEdgePath(itemBW));
+				if (FrontierExpander.isFeasible(solver, edgePath, metrics)) {
+					return Optional.of(edgePath);
+				}
+			}
+		}
+
+		return Optional.empty();
+	}
+
+	/* Rethrows the cancellation of a direction instead of wrapping it */
+	private static <T> T getUnchecked(Future<T> future) {
+		try {
+			return Futures.getUnchecked(future);
+		} catch (UncheckedExecutionException e) {
+			if (e.getCause() instanceof CancellationException) {
+				throw (CancellationException) e.getCause();
+			}
+			throw e;
+		}
+	}
 
-		Solver solver = Z3SolverFactory.getInstace().createSolver();
+	private SafetyResult checkBreadthFirst(CancellationToken deadline, BmcMetrics metrics) {
+		FrontierExpander expander = FrontierExpander.create(threads, metrics, deadline);
 
+		try {
+			return checkBreadthFirst(deadline, metrics, expander);
+		} finally {
+			expander.shutdown();
+		}
+	}
+
+	private SafetyResult checkBreadthFirst(CancellationToken deadline, BmcMetrics metrics,
+			FrontierExpander expander) {
 		/*
 		{
 			System.out.println("-----------------------");
@@ -98,245 +339,76 @@ public final class BoundedModelChecker implements SafetyChecker {
 		}
 		 */
 
-		while (stopwatch.elapsed(TimeUnit.SECONDS) < timeout) {
+		while (!deadline.isCancelled()) {
 
 			/* System level variables */
 			int depth = 0;
-			int availablePaths;
 
 			/* Forward */
-			Vector<PathVertex> path = new Vector<>();
-
-			CFA.Loc actLoc = cfa.getInitLoc();
-			Queue<PathVertex> queue = new LinkedList<>();
-			Queue<PathVertex> queue2 = new LinkedList<>();
-
-			queue.add(new PathVertex(0, 0, actLoc, null));
-			path.add(new PathVertex(0, 0, actLoc, null));
-			int pathIndex = 1;
+			PathTree tree = PathTree.forward(cfa);
+			ImmutableIntArray queue = ImmutableIntArray.of(tree.getRoot());
 
 			/* Backward */
-			Vector<PathVertex> pathBW = new Vector<>();
-
-			CFA.Loc errorLoc = cfa.getErrorLoc();
-			Queue<PathVertex> queueBW = new LinkedList<>();
-			Queue<PathVertex> queue2BW = new LinkedList<>();
-
-			queueBW.add(new PathVertex(0, 0, errorLoc, null));
-			pathBW.add(new PathVertex(0, 0, errorLoc, null));
+			PathTree treeBW = PathTree.backward(cfa);
+			ImmutableIntArray queueBW = ImmutableIntArray.of(treeBW.getRoot());
 
 			/* Loop */
 			while (true) {
+				deadline.throwIfCancelled();
 				depth++;
 
-				if (depth % 10 == 0) {
-					SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-					Date date = new Date();
-					System.out.println(formatter.format(date));
-					System.out.println("stopwatch: " + stopwatch.elapsed(TimeUnit.SECONDS));
-					System.out.println("depth: " + depth + " pathSize: " + path.size() + " pathBWSize: " + pathBW.size());
-					System.out.println("queueSize: " + queue.size() + " queueBWSize: " + queueBW.size());
-					System.out.println("");
-
-					/*
-					if (stopwatch.elapsed(TimeUnit.SECONDS) > 300) {
-						return SafetyResult.UNKNOWN;
-					}
-					 */
-				}
-
-				availablePaths = 0;
-
-				for (PathVertex item: queue) {
-					for (CFA.Edge edge : item.loc.getOutEdges()) {
-						CFA.Loc nextLoc = edge.getTarget();
-						PathVertex nextPV = new PathVertex(pathIndex, item.key, nextLoc, edge);
-
-						/* 1 */
-						List<Stmt> stmts = getStmtList(getEdgePathFromElement(path, nextPV,true));
-						Collection<Expr<BoolType>> exprs = StmtToExprTransformer.unfold(stmts);
-						if (isSat(solver, exprs)) {
-							path.add(nextPV);
-							pathIndex++;
-							queue2.add(nextPV);
-							availablePaths++;
-						}
-					}
-				}
-				queueTransfer(queue2, queue);
+				queue = expander.expand(tree, queue, deadline);
 
 				/* 1 */
-				if (availablePaths == 0) {
-					System.out.println("SAFE -- 1. depth: " + depth);
+				if (queue.isEmpty()) {
+					metrics.depthCompleted(depth, 0, queueBW.length());
 					return SafetyResult.SAFE;
 				}
 
 				/* 2 */
-				if (!isSatError(queueBW, queue2BW, pathBW, solver)) {
-					System.out.println("SAFE -- 2. depth: " + depth);
+				queueBW = expander.expand(treeBW, queueBW, deadline);
+				metrics.depthCompleted(depth, queue.length(), queueBW.length());
+
+				if (queueBW.isEmpty()) {
 					return SafetyResult.SAFE;
 				}
 
 				/* 3 */
-				for (PathVertex item: queue) {
-					if (item.loc == cfa.getErrorLoc()) {
-
-						List<Stmt> stmts = getStmtList(getEdgePathFromElement(path, item, true));
-						Collection<Expr<BoolType>> exprs = StmtToExprTransformer.unfold(stmts);
-
-						if (isSat(solver, exprs)) {
-							System.out.println("UNSAFE. depth: " + depth);
-							writeOutPath(path, item);
-							return SafetyResult.UNSAFE;
-						}
+				for (int i = 0; i < queue.length(); i++) {
+					int item = queue.get(i);
+					if (tree.getLoc(item) == cfa.getErrorLoc()) {
+						counterexample = tree.getEdgePath(item);
+						return SafetyResult.UNSAFE;
 					}
 				}
 			}
 		}
 
-		stopwatch.stop();
-
 		return SafetyResult.TIMEOUT;
 	}
 
-	private List<CFA.Edge> getEdgePathFromElement(Vector<PathVertex> path, PathVertex item, boolean reverse) {
-		List<CFA.Edge> edgeList = new ArrayList<>();
-		PathVertex actPV = item;
-
-		while (actPV.key != 0) {
-			edgeList.add(actPV.parentEdge);
-			actPV = findVertexWithParentKey(path, actPV.parentKey);
-			// actPV = path.get(actPV.parentKey);
-		}
-
-		if (reverse) {
-			Collections.reverse(edgeList);
-			return edgeList;
-		} else {
-			return edgeList;
-		}
-	}
-
-	private List<Stmt> getStmtList(List<CFA.Edge> edgePath) {
-		List<Stmt> stmtList = new ArrayList<>();
-
-		for (CFA.Edge edge : edgePath) {
-			stmtList.add(edge.getStmt());
-		}
-
-		return stmtList;
-	}
-
-	private void writeOutPath(Vector<PathVertex> path, PathVertex item) {
-		PathVertex actPV = item;
-		List<String> pathListForWritingOut = new ArrayList<>();
-
-		while (actPV.key != 0) {
-			if (actPV.loc.getName().length() != 0) {
-				pathListForWritingOut.add(actPV.loc.getName());
-			}
-			actPV = findVertexWithParentKey(path, actPV.parentKey);
-			// actPV = path.get(actPV.parentKey);
-		}
-		pathListForWritingOut.add(actPV.loc.getName());
-		for (int idx = pathListForWritingOut.size() - 1; idx >= 0; idx--) {
-			System.out.print(pathListForWritingOut.get(idx));
-			if (idx != 0) {
-				System.out.print(" -> ");
-			}
-		}
-		System.out.println();
-	}
-
-	private PathVertex findVertexWithParentKey(Vector<PathVertex> path, int paretKey) {
-		int pointer = 0;
-		int max_interval = path.size() - 1;
-		int m;
-
-		while (pointer <= max_interval) {
-			m = pointer + (max_interval - pointer) / 2;
-
-			if (path.get(m).key == paretKey) {
-				return path.get(m);
-			}
-
-			if (path.get(m).key < paretKey) {
-				pointer = m + 1;
-			} else {
-				max_interval = m - 1;
-			}
-		}
-
-		System.out.println("\n---ERROR getParentKey()---\n");
-		return null;
-	}
-
-	private void writeOutPathTree(Vector<PathVertex> path) {
-		int path_size_max = 100;
-		if (path.size() < path_size_max) {
-			path_size_max = path.size();
-		}
-		for (int i = 0; i < path_size_max; i++) {
-			System.out.print("key: " + path.get(i).key + " ");
-			if (path.get(i).loc.getName().equals("")) {
-				System.out.print("loc name: XX ");
-			} else {
-				System.out.print("loc name: " + path.get(i).loc.getName() + " ");
-			}
-			if (path.get(i).parentEdge != null) {
-				if (path.get(i).parentEdge.getSource().getName().equals("")) {
-					System.out.print("parent loc name: XX ");
-				} else {
-					System.out.print("parent loc name: " + path.get(i).parentEdge.getSource().getName() + " ");
-				}
-			} else {
-				System.out.print("parent loc name: NULL ");
-			}
-			System.out.print("parent key: " + path.get(i).parentKey + "\n");
+	/* Solvers a check leases at once: one per worker of each expander, and one of its own */
+	private static int getMaxLeases(final SearchStrategy strategy, final int threads) {
+		switch (strategy) {
+			case INCREMENTAL:
+				return 1;
+			case BIDIRECTIONAL:
+				return 2 * threads + 1;
+			case BREADTH_FIRST:
+			default:
+				return threads;
 		}
 	}
 
-	private void queueTransfer(Queue<PathVertex> copyOne, Queue<PathVertex> pasteOne) {
-		pasteOne.clear();
-		pasteOne.addAll(copyOne);
-		copyOne.clear();
-	}
-
-	private boolean isSat(Solver solver, Collection<Expr<BoolType>> exprs) {
-		boolean status;
-
-		solver.push();
-		solver.add(exprs);
-		solver.check();
-
-		status = solver.getStatus().isSat();
-
-		solver.pop();
-
-		return status;
-	}
-
-	private boolean isSatError(Queue<PathVertex> queueBW, Queue<PathVertex> queue2BW, Vector<PathVertex> pathBW, Solver solver) {
-		int availablePaths = 0;
-
-		for (PathVertex item: queueBW) {
-			for (CFA.Edge edge : item.loc.getInEdges()) {
-				CFA.Loc nextLoc = edge.getSource();
-				PathVertex nextPV = new PathVertex(pathBW.size(), item.key, nextLoc, edge);
+	public enum SearchStrategy {
+		/* Every candidate path is unfolded from scratch, the queries of a level may be split among threads */
+		BREADTH_FIRST,
 
-				pathBW.add(nextPV);
-
-				List<Stmt> stmts = getStmtList(getEdgePathFromElement(pathBW, pathBW.lastElement(), false));
-				Collection<Expr<BoolType>> exprs = StmtToExprTransformer.unfold(stmts);
-				if (isSat(solver, exprs)) {
-					queue2BW.add(nextPV);
-					availablePaths++;
-				}
-			}
-		}
-		queueTransfer(queue2BW, queueBW);
+		/* Iterative deepening that keeps the current path prefix asserted on the solver stack */
+		INCREMENTAL,
 
-		return availablePaths != 0;
+		/* Forward and backward trees grown concurrently, error paths are found where their frontiers meet */
+		BIDIRECTIONAL
 	}
 
 }
@@ -0,0 +1,199 @@
+package hu.bme.mit.ca.bmc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.util.concurrent.Futures;
+
+import hu.bme.mit.ca.common.CancellationToken;
+import hu.bme.mit.ca.common.SolverPool;
+import hu.bme.mit.theta.cfa.CFA;
+import hu.bme.mit.theta.core.stmt.Stmt;
+import hu.bme.mit.theta.core.type.Expr;
+import hu.bme.mit.theta.core.type.booltype.BoolType;
+import hu.bme.mit.theta.solver.Solver;
+
+/*
+ * Expands a BFS level of a PathTree. The satisfiability queries of a level
+ * are split among the workers, each owning its own solver, and the feasible
+ * children are added to the tree in candidate order afterwards, so the tree
+ * and the next frontier do not depend on the number of workers. The solvers
+ * are leased from the pool until shutdown.
+ */
+final class FrontierExpander {
+
+	private static final int CHUNK_SIZE = 256;
+	private static final Object UNFOLD_LOCK = new Object();
+
+	private final List<SolverPool.Lease<Solver>> leases;
+	private final List<Solver> solvers;
+	private final ExecutorService executor;
+	private final BmcMetrics metrics;
+
+	private FrontierExpander(final int threads, final BmcMetrics metrics, final CancellationToken token) {
+		checkArgument(threads >= 1);
+		this.metrics = checkNotNull(metrics);
+		checkNotNull(token);
+
+		leases = new ArrayList<>(threads);
+		solvers = new ArrayList<>(threads);
+		try {
+			for (int i = 0; i < threads; i++) {
+				final SolverPool.Lease<Solver> lease = SolverPool.getDefault().acquire(token);
+				leases.add(lease);
+				solvers.add(lease.get());
+			}
+		} catch (final RuntimeException e) {
+			leases.forEach(SolverPool.Lease::close);
+			throw e;
+		}
+
+		if (threads > 1) {
+			executor = Executors.newFixedThreadPool(threads);
+		} else {
+			executor = null;
+		}
+	}
+
+	/* Waits for the solvers of the workers until the token is cancelled */
+	public static FrontierExpander create(final int threads, final BmcMetrics metrics,
+			final CancellationToken token) {
+		return new FrontierExpander(threads, metrics, token);
+	}
+
+	/*
+	 * Adds the feasible one-edge extensions of the frontier to the tree and
+	 * returns them as the next frontier. The candidates are unfolded and
+	 * checked a chunk at a time, so only the paths of a chunk are kept.
+	 */
+	public ImmutableIntArray expand(final PathTree tree, final ImmutableIntArray frontier,
+			final CancellationToken token) {
+		final ImmutableIntArray.Builder parentsBuilder = ImmutableIntArray.builder();
+		final List<CFA.Edge> edges = new ArrayList<>();
+		for (int i = 0; i < frontier.length(); i++) {
+			final int item = frontier.get(i);
+			for (final CFA.Edge edge : tree.getDirection().edgesOf(tree.getLoc(item))) {
+				parentsBuilder.add(item);
+				edges.add(edge);
+			}
+		}
+
+		final ImmutableIntArray parents = parentsBuilder.build();
+		final boolean[] feasible = new boolean[parents.length()];
+		for (int from = 0; from < parents.length(); from += CHUNK_SIZE) {
+			final int to = Math.min(from + CHUNK_SIZE, parents.length());
+			final List<Collection<Expr<BoolType>>> exprs = unfold(tree, parents, edges, from, to, token);
+			check(exprs, feasible, from, token);
+		}
+
+		/* Workers stop early on cancellation, so the level is incomplete and must not be merged */
+		token.throwIfCancelled();
+
+		final ImmutableIntArray.Builder nextFrontier = ImmutableIntArray.builder();
+		for (int i = 0; i < parents.length(); i++) {
+			if (feasible[i]) {
+				nextFrontier.add(tree.addChild(parents.get(i), edges.get(i)));
+			}
+		}
+
+		final ImmutableIntArray result = nextFrontier.build();
+		metrics.verticesCreated(result.length());
+		return result;
+	}
+
+	/* Checks a chunk of candidates starting at offset, split among the workers */
+	private void check(final List<Collection<Expr<BoolType>>> exprs, final boolean[] feasible, final int offset,
+			final CancellationToken token) {
+		if (executor == null || exprs.size() < 2) {
+			check(exprs, feasible, offset, solvers.get(0), 0, 1, token, metrics);
+		} else {
+			final int workers = Math.min(solvers.size(), exprs.size());
+			final List<Future<?>> futures = new ArrayList<>(workers);
+			for (int w = 0; w < workers; w++) {
+				final Solver solver = solvers.get(w);
+				final int first = w;
+				futures.add(executor.submit(
+						() -> check(exprs, feasible, offset, solver, first, workers, token, metrics)));
+			}
+			for (final Future<?> future : futures) {
+				Futures.getUnchecked(future);
+			}
+		}
+	}
+
+	/* The solvers are only returned once the workers have stopped using them */
+	public void shutdown() {
+		if (executor == null || stop(executor)) {
+			leases.forEach(SolverPool.Lease::close);
+		}
+	}
+
+	/* False if interrupted while waiting for the running tasks */
+	static boolean stop(final ExecutorService executor) {
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			return true;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/* Checks every stride-th candidate of the chunk starting from first */
+	private static void check(final List<Collection<Expr<BoolType>>> exprs, final boolean[] feasible,
+			final int offset, final Solver solver, final int first, final int stride, final CancellationToken token,
+			final BmcMetrics metrics) {
+		for (int i = first; i < exprs.size() && !token.isCancelled(); i += stride) {
+			feasible[offset + i] = isFeasible(solver, exprs.get(i), metrics);
+		}
+	}
+
+	static boolean isFeasible(final Solver solver, final List<CFA.Edge> edgePath, final BmcMetrics metrics) {
+		return isFeasible(solver, unfold(edgePath), metrics);
+	}
+
+	private static boolean isFeasible(final Solver solver, final Collection<Expr<BoolType>> exprs,
+			final BmcMetrics metrics) {
+		solver.push();
+		solver.add(exprs);
+		final boolean status = metrics.checkSat(solver);
+		solver.pop();
+		return status;
+	}
+
+	private static List<Collection<Expr<BoolType>>> unfold(final PathTree tree, final ImmutableIntArray parents,
+			final List<CFA.Edge> edges, final int from, final int to, final CancellationToken token) {
+		final List<Collection<Expr<BoolType>>> exprs = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) {
+			token.throwIfCancelled();
+			exprs.add(unfold(tree.getEdgePath(parents.get(i), edges.get(i))));
+		}
+		return exprs;
+	}
+
+	/*
+	 * Unfolding creates the indexed constants of the CFA variables in an
+	 * unsynchronized cache of their VarDecl, so paths are unfolded one at a
+	 * time, and only the solver queries run concurrently.
+	 */
+	private static Collection<Expr<BoolType>> unfold(final List<CFA.Edge> edgePath) {
+		final List<Stmt> stmts = new ArrayList<>(edgePath.size());
+		for (final CFA.Edge edge : edgePath) {
+			stmts.add(edge.getStmt());
+		}
+		synchronized (UNFOLD_LOCK) {
+			return StmtToExprTransformer.unfold(stmts);
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+package hu.bme.mit.ca.bmc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import hu.bme.mit.ca.common.CancellationToken;
+import hu.bme.mit.theta.cfa.CFA;
+import hu.bme.mit.theta.core.type.Expr;
+import hu.bme.mit.theta.core.type.booltype.BoolType;
+import hu.bme.mit.theta.core.utils.PathUtils;
+import hu.bme.mit.theta.core.utils.StmtUnfoldResult;
+import hu.bme.mit.theta.core.utils.StmtUtils;
+import hu.bme.mit.theta.core.utils.VarIndexing;
+import hu.bme.mit.theta.solver.Solver;
+
+/*
+ * Depth-first path enumeration that keeps the constraints of the current path
+ * on the solver stack (one push per edge, pop on backtrack), so every query
+ * only adds the SSA-indexed constraint of the newest edge.
+ */
+final class IncrementalPathSearch {
+
+	private final CFA cfa;
+	private final Solver solver;
+	private final CancellationToken token;
+	private final BmcMetrics metrics;
+	private final Map<CFA.Edge, StmtUnfoldResult> unfoldResults;
+	private final Deque<CFA.Edge> edgeStack;
+
+	private int availablePaths;
+	private List<CFA.Edge> errorPath;
+
+	private IncrementalPathSearch(final CFA cfa, final Solver solver, final CancellationToken token,
+			final BmcMetrics metrics) {
+		this.cfa = checkNotNull(cfa);
+		this.solver = checkNotNull(solver);
+		this.token = checkNotNull(token);
+		this.metrics = checkNotNull(metrics);
+		unfoldResults = new HashMap<>();
+		edgeStack = new ArrayDeque<>();
+		errorPath = null;
+	}
+
+	public static IncrementalPathSearch create(final CFA cfa, final Solver solver, final CancellationToken token,
+			final BmcMetrics metrics) {
+		return new IncrementalPathSearch(cfa, solver, token, metrics);
+	}
+
+	/* Number of feasible paths of length depth from the init location, stops at the first error path */
+	public int forward(final int depth) {
+		checkArgument(depth > 0);
+		availablePaths = 0;
+		forward(cfa.getInitLoc(), VarIndexing.all(0), depth);
+		return availablePaths;
+	}
+
+	/* Whether a path of length depth ending in the error location is feasible, stops at the first one */
+	public boolean backward(final int depth) {
+		checkArgument(depth > 0);
+		return backward(cfa.getErrorLoc(), VarIndexing.all(depth), depth);
+	}
+
+	public Optional<List<CFA.Edge>> getErrorPath() {
+		return Optional.ofNullable(errorPath);
+	}
+
+	private boolean forward(final CFA.Loc loc, final VarIndexing indexing, final int remaining) {
+		for (final CFA.Edge edge : loc.getOutEdges()) {
+			token.throwIfCancelled();
+			final StmtUnfoldResult unfoldResult = unfold(edge);
+			boolean errorFound = false;
+
+			solver.push();
+			solver.add(unfoldAt(unfoldResult, indexing));
+
+			if (metrics.checkSat(solver)) {
+				metrics.verticesCreated(1);
+				edgeStack.addLast(edge);
+				if (remaining == 1) {
+					availablePaths++;
+					if (edge.getTarget() == cfa.getErrorLoc()) {
+						errorPath = new ArrayList<>(edgeStack);
+						errorFound = true;
+					}
+				} else {
+					final VarIndexing nextIndexing = indexing.add(unfoldResult.getIndexing());
+					errorFound = forward(edge.getTarget(), nextIndexing, remaining - 1);
+				}
+				edgeStack.removeLast();
+			}
+
+			solver.pop();
+
+			if (errorFound) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* Paths are built from the error location backwards, so indexing is the state after the edge */
+	private boolean backward(final CFA.Loc loc, final VarIndexing indexing, final int remaining) {
+		for (final CFA.Edge edge : loc.getInEdges()) {
+			token.throwIfCancelled();
+			final StmtUnfoldResult unfoldResult = unfold(edge);
+			final VarIndexing prevIndexing = indexing.sub(unfoldResult.getIndexing());
+			boolean found = false;
+
+			solver.push();
+			solver.add(unfoldAt(unfoldResult, prevIndexing));
+
+			if (metrics.checkSat(solver)) {
+				metrics.verticesCreated(1);
+				found = remaining == 1 || backward(edge.getSource(), prevIndexing, remaining - 1);
+			}
+
+			solver.pop();
+
+			if (found) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private StmtUnfoldResult unfold(final CFA.Edge edge) {
+		return unfoldResults.computeIfAbsent(edge, e -> StmtUtils.toExpr(e.getStmt(), VarIndexing.all(0)));
+	}
+
+	private Collection<Expr<BoolType>> unfoldAt(final StmtUnfoldResult unfoldResult, final VarIndexing indexing) {
+		return unfoldResult.getExprs().stream().map(e -> PathUtils.unfold(e, indexing)).collect(toList());
+	}
+
+}
@@ -0,0 +1,184 @@
+package hu.bme.mit.ca.bmc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import hu.bme.mit.theta.cfa.CFA;
+
+/*
+ * Tree of CFA paths rooted at a single location. Vertices are plain int ids,
+ * the parent and the incoming edge of every vertex are kept in primitive
+ * arrays, so a parent step is an array read and a vertex costs two ints.
+ * Forward trees follow out edges from the root, backward trees follow in edges.
+ */
+public final class PathTree {
+	private static final int ROOT = 0;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final CFA.Loc rootLoc;
+	private final Direction direction;
+
+	private final List<CFA.Edge> edges;
+	private final Map<CFA.Edge, Integer> edgeToId;
+
+	private int[] parents;
+	private int[] edgeIds;
+	private int size;
+
+	private PathTree(final CFA cfa, final CFA.Loc rootLoc, final Direction direction) {
+		checkNotNull(cfa);
+		this.rootLoc = checkNotNull(rootLoc);
+		this.direction = checkNotNull(direction);
+
+		edges = new ArrayList<>(cfa.getEdges());
+		edgeToId = new HashMap<>();
+		for (int i = 0; i < edges.size(); i++) {
+			edgeToId.put(edges.get(i), i);
+		}
+
+		parents = new int[INITIAL_CAPACITY];
+		edgeIds = new int[INITIAL_CAPACITY];
+		parents[ROOT] = -1;
+		edgeIds[ROOT] = -1;
+		size = 1;
+	}
+
+	public static PathTree forward(final CFA cfa) {
+		return new PathTree(cfa, cfa.getInitLoc(), Direction.FORWARD);
+	}
+
+	public static PathTree backward(final CFA cfa) {
+		return new PathTree(cfa, cfa.getErrorLoc(), Direction.BACKWARD);
+	}
+
+	////
+
+	public int getRoot() {
+		return ROOT;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Direction getDirection() {
+		return direction;
+	}
+
+	public int addChild(final int parent, final CFA.Edge edge) {
+		checkElementIndex(parent, size);
+		checkArgument(direction.sourceOf(edge) == getLoc(parent));
+
+		if (size == parents.length) {
+			final int capacity = parents.length + (parents.length >> 1);
+			parents = Arrays.copyOf(parents, capacity);
+			edgeIds = Arrays.copyOf(edgeIds, capacity);
+		}
+
+		parents[size] = parent;
+		edgeIds[size] = edgeToId.get(edge);
+		return size++;
+	}
+
+	////
+
+	public boolean isRoot(final int vertex) {
+		return vertex == ROOT;
+	}
+
+	public int getParent(final int vertex) {
+		checkElementIndex(vertex, size);
+		return parents[vertex];
+	}
+
+	public CFA.Edge getEdge(final int vertex) {
+		checkElementIndex(vertex, size);
+		checkArgument(vertex != ROOT);
+		return edges.get(edgeIds[vertex]);
+	}
+
+	public CFA.Loc getLoc(final int vertex) {
+		if (vertex == ROOT) {
+			return rootLoc;
+		} else {
+			return direction.targetOf(getEdge(vertex));
+		}
+	}
+
+	/* Edges of the path between the root and the vertex, in execution order */
+	public List<CFA.Edge> getEdgePath(final int vertex) {
+		final List<CFA.Edge> edgePath = new ArrayList<>();
+		for (int v = vertex; v != ROOT; v = parents[v]) {
+			edgePath.add(edges.get(edgeIds[v]));
+		}
+		if (direction == Direction.FORWARD) {
+			Collections.reverse(edgePath);
+		}
+		return edgePath;
+	}
+
+	/* Edges of the path of a would-be child of the vertex, in execution order */
+	public List<CFA.Edge> getEdgePath(final int vertex, final CFA.Edge edge) {
+		final List<CFA.Edge> edgePath = getEdgePath(vertex);
+		if (direction == Direction.FORWARD) {
+			edgePath.add(edge);
+		} else {
+			edgePath.add(0, edge);
+		}
+		return edgePath;
+	}
+
+	////
+
+	public enum Direction {
+		FORWARD {
+			@Override
+			CFA.Loc sourceOf(final CFA.Edge edge) {
+				return edge.getSource();
+			}
+
+			@Override
+			CFA.Loc targetOf(final CFA.Edge edge) {
+				return edge.getTarget();
+			}
+
+			@Override
+			Collection<CFA.Edge> edgesOf(final CFA.Loc loc) {
+				return loc.getOutEdges();
+			}
+		},
+
+		BACKWARD {
+			@Override
+			CFA.Loc sourceOf(final CFA.Edge edge) {
+				return edge.getTarget();
+			}
+
+			@Override
+			CFA.Loc targetOf(final CFA.Edge edge) {
+				return edge.getSource();
+			}
+
+			@Override
+			Collection<CFA.Edge> edgesOf(final CFA.Loc loc) {
+				return loc.getInEdges();
+			}
+		};
+
+		abstract CFA.Loc sourceOf(CFA.Edge edge);
+
+		abstract CFA.Loc targetOf(CFA.Edge edge);
+
+		abstract Collection<CFA.Edge> edgesOf(CFA.Loc loc);
+	}
+
+}
@@ -16,9 +16,13 @@ import hu.bme.mit.theta.core.utils.VarIndexing;
 final class StmtToExprTransformer {
 
 	public static Collection<Expr<BoolType>> unfold(final List<? extends Stmt> stmts) {
+		return unfold(stmts, 0);
+	}
+
+	public static Collection<Expr<BoolType>> unfold(final List<? extends Stmt> stmts, final int index) {
 		final StmtUnfoldResult unfoldResult = StmtUtils.toExpr(stmts, VarIndexing.all(0));
 		final Collection<? extends Expr<BoolType>> exprs = unfoldResult.getExprs();
-		final Collection<Expr<BoolType>> result = exprs.stream().map(e -> PathUtils.unfold(e, 0)).collect(toList());
+		final Collection<Expr<BoolType>> result = exprs.stream().map(e -> PathUtils.unfold(e, index)).collect(toList());
 		return result;
 	}
 
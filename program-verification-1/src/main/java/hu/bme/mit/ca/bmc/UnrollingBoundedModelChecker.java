@@ -0,0 +1,172 @@
+package hu.bme.mit.ca.bmc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static hu.bme.mit.theta.core.decl.Decls.Const;
+import static hu.bme.mit.theta.core.stmt.Stmts.Assign;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.And;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.False;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.Or;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Eq;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Int;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import hu.bme.mit.ca.common.CancellationToken;
+import hu.bme.mit.ca.common.SolverPool;
+import hu.bme.mit.theta.cfa.CFA;
+import hu.bme.mit.theta.core.decl.ConstDecl;
+import hu.bme.mit.theta.core.decl.VarDecl;
+import hu.bme.mit.theta.core.stmt.Stmt;
+import hu.bme.mit.theta.core.type.Expr;
+import hu.bme.mit.theta.core.type.Type;
+import hu.bme.mit.theta.core.type.booltype.BoolType;
+import hu.bme.mit.theta.core.type.inttype.IntType;
+import hu.bme.mit.theta.core.utils.StmtUtils;
+import hu.bme.mit.theta.core.utils.VarIndexing;
+import hu.bme.mit.theta.solver.Solver;
+
+/*
+ * Classic BMC: the transition relation of the CFA is encoded with an integer
+ * location variable per step and unrolled one step at a time on a single
+ * incremental solver, instead of enumerating the paths one by one.
+ */
+public final class UnrollingBoundedModelChecker implements SafetyChecker {
+
+	private static final String LOC_VAR_PREFIX = "__loc_";
+
+	private final CFA cfa;
+	private final int bound;
+	private final int timeout;
+	private final CancellationToken token;
+
+	private UnrollingBoundedModelChecker(final CFA cfa, final int bound, final int timeout) {
+		checkArgument(bound >= 0);
+		checkArgument(timeout >= 0);
+
+		this.cfa = checkNotNull(cfa);
+		this.bound = bound;
+		this.timeout = timeout;
+		this.token = CancellationToken.create();
+	}
+
+	public static UnrollingBoundedModelChecker create(final CFA cfa, final int bound, final int timeout) {
+		return new UnrollingBoundedModelChecker(cfa, bound, timeout);
+	}
+
+	/* Stops the running check and every later check of this checker with TIMEOUT */
+	public void cancel() {
+		token.cancel();
+	}
+
+	@Override
+	public SafetyResult check() {
+		final CancellationToken deadline = token.withTimeout(timeout, TimeUnit.SECONDS);
+
+		try (SolverPool.Lease<Solver> lease = SolverPool.getDefault().acquire(deadline)) {
+			return check(deadline, lease.get());
+		} catch (final CancellationException e) {
+			return SafetyResult.TIMEOUT;
+		}
+	}
+
+	private SafetyResult check(final CancellationToken deadline, final Solver solver) {
+		final Map<CFA.Loc, Integer> locIds = new HashMap<>();
+		for (final CFA.Loc loc : cfa.getLocs()) {
+			locIds.put(loc, locIds.size());
+		}
+
+		final Map<CFA.Edge, List<Stmt>> edgeStmts = new LinkedHashMap<>();
+		for (final CFA.Edge edge : cfa.getEdges()) {
+			edgeStmts.put(edge, withFrame(edge.getStmt()));
+		}
+
+		final List<ConstDecl<IntType>> locVars = new ArrayList<>();
+		locVars.add(Const(LOC_VAR_PREFIX + 0, Int()));
+
+		solver.add(atLoc(locVars.get(0), cfa.getInitLoc(), locIds));
+
+		for (int k = 0; k <= bound; k++) {
+			if (deadline.isCancelled()) {
+				return SafetyResult.TIMEOUT;
+			}
+
+			/* Is the error location reachable in exactly k steps? */
+			solver.push();
+			solver.add(atLoc(locVars.get(k), cfa.getErrorLoc(), locIds));
+			final boolean errorReachable = solver.check().isSat();
+			solver.pop();
+
+			if (errorReachable) {
+				return SafetyResult.UNSAFE;
+			}
+
+			if (k == bound) {
+				break;
+			}
+
+			/* Unroll one more step, no path of length k + 1 means every path has been explored */
+			locVars.add(Const(LOC_VAR_PREFIX + (k + 1), Int()));
+			solver.add(transition(k, locVars.get(k), locVars.get(k + 1), edgeStmts, locIds));
+
+			if (solver.check().isUnsat()) {
+				return SafetyResult.SAFE;
+			}
+		}
+
+		return SafetyResult.UNKNOWN;
+	}
+
+	/* Steps the indices of all variables from k to k + 1 along one of the edges */
+	private Expr<BoolType> transition(final int k, final ConstDecl<IntType> locVar, final ConstDecl<IntType> nextLocVar,
+			final Map<CFA.Edge, List<Stmt>> edgeStmts, final Map<CFA.Loc, Integer> locIds) {
+		final Collection<Expr<BoolType>> disjuncts = new ArrayList<>();
+
+		for (final Map.Entry<CFA.Edge, List<Stmt>> entry : edgeStmts.entrySet()) {
+			final CFA.Edge edge = entry.getKey();
+			final Collection<Expr<BoolType>> conjuncts = new ArrayList<>();
+			conjuncts.add(atLoc(locVar, edge.getSource(), locIds));
+			conjuncts.add(atLoc(nextLocVar, edge.getTarget(), locIds));
+			conjuncts.addAll(StmtToExprTransformer.unfold(entry.getValue(), k));
+			disjuncts.add(And(conjuncts));
+		}
+
+		if (disjuncts.isEmpty()) {
+			return False();
+		} else {
+			return Or(disjuncts);
+		}
+	}
+
+	/* Variables not modified by the statement keep their value, so each step shifts every index by one */
+	private List<Stmt> withFrame(final Stmt stmt) {
+		final VarIndexing offset = StmtUtils.toExpr(stmt, VarIndexing.all(0)).getIndexing();
+
+		final List<Stmt> stmts = new ArrayList<>();
+		stmts.add(stmt);
+		for (final VarDecl<?> var : cfa.getVars()) {
+			checkArgument(offset.get(var) <= 1);
+			if (offset.get(var) == 0) {
+				stmts.add(keep(var));
+			}
+		}
+		return stmts;
+	}
+
+	private static <T extends Type> Stmt keep(final VarDecl<T> var) {
+		return Assign(var, var.getRef());
+	}
+
+	private static Expr<BoolType> atLoc(final ConstDecl<IntType> locVar, final CFA.Loc loc,
+			final Map<CFA.Loc, Integer> locIds) {
+		return Eq(locVar.getRef(), Int(locIds.get(loc)));
+	}
+
+}
@@ -0,0 +1,145 @@
+package hu.bme.mit.ca.bmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import hu.bme.mit.ca.bmc.BoundedModelChecker.SearchStrategy;
+import hu.bme.mit.ca.common.SolverPool;
+import hu.bme.mit.theta.cfa.CFA;
+import hu.bme.mit.theta.cfa.dsl.CfaDslManager;
+
+@RunWith(value = Parameterized.class)
+public final class BoundedModelCheckerStrategyTest {
+
+	@Parameter(value = 0)
+	public String filepath;
+
+	@Parameter(value = 1)
+	public boolean safe;
+
+	@Parameter(value = 2)
+	public int bound;
+
+	@Parameter(value = 3)
+	public SearchStrategy strategy;
+
+	@Parameters(name = "{index}: {0}, {1}, {3}")
+	public static Collection<Object[]> data() {
+		final Collection<Object[]> models = Arrays.asList(new Object[][] {
+
+				{ "src/test/resources/ca-ex_false.cfa", false, 30 },
+
+				{ "src/test/resources/counter5_false_simpled.cfa", false, 30 },
+
+				{ "src/test/resources/counter5_true_simpled.cfa", true, 30 },
+
+				{ "src/test/resources/gcd_true.cfa", true, 15 },
+
+				{ "src/test/resources/locking_true.cfa", true, 30 },
+
+				{ "src/test/resources/locks_15_false.c_1.cfa", false, 30 },
+
+		});
+
+		final Collection<Object[]> data = new ArrayList<>();
+		for (final Object[] model : models) {
+			for (final SearchStrategy strategy : SearchStrategy.values()) {
+				data.add(new Object[] { model[0], model[1], model[2], strategy });
+			}
+		}
+		return data;
+	}
+
+	@Test
+	public void test() throws IOException {
+		final InputStream inputStream = new FileInputStream(filepath);
+		final CFA cfa = CfaDslManager.createCfa(inputStream);
+		final SafetyChecker checker = BoundedModelChecker.create(cfa, bound, 5, strategy);
+
+		final SafetyResult result = checker.check();
+		if (safe) {
+			assertEquals(SafetyResult.SAFE, result);
+		} else {
+			assertEquals(SafetyResult.UNSAFE, result);
+		}
+	}
+
+	@Test
+	public void testParallel() throws IOException {
+		assumeTrue(strategy != SearchStrategy.INCREMENTAL);
+
+		final InputStream inputStream = new FileInputStream(filepath);
+		final CFA cfa = CfaDslManager.createCfa(inputStream);
+		final BoundedModelChecker sequential = BoundedModelChecker.create(cfa, bound, 5, strategy, 1);
+		final BoundedModelChecker parallel = BoundedModelChecker.create(cfa, bound, 5, strategy, 4);
+
+		assertEquals(sequential.check(), parallel.check());
+		assertEquals(sequential.getCounterexample(), parallel.getCounterexample());
+	}
+
+	@Test
+	public void testListener() throws IOException {
+		final InputStream inputStream = new FileInputStream(filepath);
+		final CFA cfa = CfaDslManager.createCfa(inputStream);
+		final List<BmcStatistics> statistics = new ArrayList<>();
+		final BoundedModelChecker checker = BoundedModelChecker.create(cfa, bound, 5, strategy, 1, statistics::add);
+
+		checker.check();
+
+		assertTrue(!statistics.isEmpty());
+		assertEquals(statistics.get(statistics.size() - 1), checker.getStatistics());
+		for (int i = 0; i < statistics.size(); i++) {
+			assertEquals(i + 1, statistics.get(i).getDepth());
+			assertTrue(statistics.get(i).getSatCalls() <= statistics.get(i).getSolverCalls());
+		}
+	}
+
+	/* Every solver leased by the check, including the ones of the workers, is returned to the pool */
+	@Test
+	public void testSolverLeases() throws IOException {
+		final InputStream inputStream = new FileInputStream(filepath);
+		final CFA cfa = CfaDslManager.createCfa(inputStream);
+		final int threads = strategy == SearchStrategy.INCREMENTAL ? 1 : 4;
+		final BoundedModelChecker checker = BoundedModelChecker.create(cfa, bound, 5, strategy, threads);
+		final SolverPool pool = SolverPool.getDefault();
+		final int leased = pool.getLeasedCount();
+
+		checker.check();
+
+		assertEquals(leased, pool.getLeasedCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooManyThreads() throws IOException {
+		final InputStream inputStream = new FileInputStream(filepath);
+		final CFA cfa = CfaDslManager.createCfa(inputStream);
+		BoundedModelChecker.create(cfa, bound, 5, strategy, SolverPool.getDefault().getMaxLive() + 1);
+	}
+
+	@Test
+	public void testCancelled() throws IOException {
+		final InputStream inputStream = new FileInputStream(filepath);
+		final CFA cfa = CfaDslManager.createCfa(inputStream);
+		final BoundedModelChecker checker = BoundedModelChecker.create(cfa, bound, 5, strategy);
+
+		checker.cancel();
+
+		assertEquals(SafetyResult.TIMEOUT, checker.check());
+	}
+
+}
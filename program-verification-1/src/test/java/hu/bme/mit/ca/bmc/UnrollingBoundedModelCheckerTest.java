@@ -0,0 +1,59 @@
+package hu.bme.mit.ca.bmc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import hu.bme.mit.theta.cfa.CFA;
+import hu.bme.mit.theta.cfa.dsl.CfaDslManager;
+
+@RunWith(value = Parameterized.class)
+public final class UnrollingBoundedModelCheckerTest {
+
+	@Parameter(value = 0)
+	public String filepath;
+
+	@Parameter(value = 1)
+	public SafetyResult expected;
+
+	@Parameter(value = 2)
+	public int bound;
+
+	@Parameters(name = "{index}: {0}, {1}")
+	public static Collection<Object[]> data() {
+		return Arrays.asList(new Object[][] {
+
+				{ "src/test/resources/ca-ex_false.cfa", SafetyResult.UNSAFE, 30 },
+
+				{ "src/test/resources/counter5_false_simpled.cfa", SafetyResult.UNSAFE, 30 },
+
+				{ "src/test/resources/counter5_true_simpled.cfa", SafetyResult.SAFE, 30 },
+
+				{ "src/test/resources/sajat.cfa", SafetyResult.SAFE, 30 },
+
+				{ "src/test/resources/gcd_true.cfa", SafetyResult.UNKNOWN, 15 },
+
+		});
+	}
+
+	@Test
+	public void test() throws IOException {
+		final InputStream inputStream = new FileInputStream(filepath);
+		final CFA cfa = CfaDslManager.createCfa(inputStream);
+		final SafetyChecker checker = UnrollingBoundedModelChecker.create(cfa, bound, 5);
+
+		final SafetyResult result = checker.check();
+		assertEquals(expected, result);
+	}
+
+}
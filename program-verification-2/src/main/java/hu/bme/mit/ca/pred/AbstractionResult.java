@@ -1,7 +1,12 @@
 package hu.bme.mit.ca.pred;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
 import hu.bme.mit.ca.pred.arg.ArgNode;
 
 abstract class AbstractionResult {
@@ -14,7 +19,11 @@ abstract class AbstractionResult {
 	}
 
 	public static Failure failure(final ArgNode errorNode) {
-		return new Failure(errorNode);
+		return failure(ImmutableList.of(errorNode));
+	}
+
+	public static Failure failure(final List<ArgNode> errorNodes) {
+		return new Failure(errorNodes);
 	}
 
 	public boolean isSuccess() {
@@ -63,14 +72,21 @@ abstract class AbstractionResult {
 	}
 
 	public static final class Failure extends AbstractionResult {
-		private final ArgNode errorNode;
+		private final List<ArgNode> errorNodes;
 
-		private Failure(final ArgNode errorNode) {
-			this.errorNode = checkNotNull(errorNode);
+		private Failure(final List<ArgNode> errorNodes) {
+			this.errorNodes = ImmutableList.copyOf(errorNodes);
+			checkArgument(!this.errorNodes.isEmpty());
 		}
 
+		/* The first error node that was reached */
 		public ArgNode getErrorNode() {
-			return errorNode;
+			return errorNodes.get(0);
+		}
+
+		/* Distinct error nodes, in the order they were reached */
+		public List<ArgNode> getErrorNodes() {
+			return errorNodes;
 		}
 
 		@Override
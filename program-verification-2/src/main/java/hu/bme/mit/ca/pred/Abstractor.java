@@ -1,62 +1,479 @@
 package hu.bme.mit.ca.pred;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.stream.Collectors.toList;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Streams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import hu.bme.mit.ca.common.CancellationToken;
 import hu.bme.mit.ca.pred.CegarChecker.SearchStrategy;
+import hu.bme.mit.ca.pred.arg.ArgEdge;
 import hu.bme.mit.ca.pred.arg.ArgNode;
+import hu.bme.mit.ca.pred.domain.PostCache;
 import hu.bme.mit.ca.pred.domain.PredDomain;
+import hu.bme.mit.ca.pred.domain.PredDomain.AbstractionMode;
 import hu.bme.mit.ca.pred.domain.PredPrecision;
+import hu.bme.mit.ca.pred.domain.PredState;
 import hu.bme.mit.ca.pred.waitlist.Waitlist;
+import hu.bme.mit.ca.pred.waitlist.WorkStealingWaitlist;
 import hu.bme.mit.theta.cfa.CFA;
+import hu.bme.mit.theta.core.decl.VarDecl;
+import hu.bme.mit.theta.core.utils.StmtUtils;
+import hu.bme.mit.theta.core.utils.VarIndexing;
 
+/*
+ * Builds the abstract reachability graph. The graph is kept between calls of
+ * check, so after a refinement only the pruned subtrees are rebuilt: nodes
+ * that are neither expanded nor covered are put back to the waitlist, and
+ * parents of pruned nodes are expanded again along the pruned CFA edges.
+ * With more than one thread, nodes are expanded in parallel by workers that
+ * each own a domain with its own solvers, on threads kept until release. The graph is explored until the
+ * given number of error nodes is reached, so that a single refinement can
+ * eliminate several counterexamples.
+ */
 final class Abstractor {
+	private static final long IDLE_WAIT_MILLIS = 50;
+
 	private final CFA cfa;
-	private final SearchStrategy strategy;
 	private final PredDomain domain;
+	private final Waitlist waitlist;
+	private final List<PredDomain> workerDomains;
+	private final WorkStealingWaitlist workerWaitlist;
+	private final int maxCounterexamples;
+
+	private final ReachedSet reachedSet;
+	private final SetMultimap<ArgNode, CFA.Edge> pendingEdges;
+	private ArgNode rootNode;
+	private ExecutorService executor;
 
-	private Abstractor(final CFA cfa, final SearchStrategy strategy) {
+	private Abstractor(final CFA cfa, final SearchStrategy strategy, final AbstractionMode mode,
+			final int cacheSize, final int threads, final int maxCounterexamples) {
 		this.cfa = checkNotNull(cfa);
-		this.strategy = checkNotNull(strategy);
-		domain = PredDomain.create();
+		checkNotNull(strategy);
+		checkArgument(threads >= 1);
+		checkArgument(maxCounterexamples >= 1);
+		this.maxCounterexamples = maxCounterexamples;
+		domain = PredDomain.create(mode, cacheSize);
+		waitlist = strategy.createWaitlist(cfa);
+
+		final ImmutableList.Builder<PredDomain> domains = ImmutableList.builder();
+		domains.add(domain);
+		for (int i = 1; i < threads; i++) {
+			domains.add(PredDomain.create(mode, domain.getPostCache()));
+		}
+		workerDomains = domains.build();
+		workerWaitlist = WorkStealingWaitlist.create(() -> strategy.createWaitlist(cfa), threads);
+
+		reachedSet = ReachedSet.withSignatureIndex();
+		pendingEdges = LinkedHashMultimap.create();
+		rootNode = null;
+		executor = null;
+
+		if (threads > 1) {
+			createIndexedConsts();
+		}
+	}
+
+	/*
+	 * Variables create their indexed constants lazily and without
+	 * synchronization, so the constants the workers unfold are created before
+	 * the workers start: each variable up to its highest index after an edge.
+	 */
+	private void createIndexedConsts() {
+		for (final CFA.Edge edge : cfa.getEdges()) {
+			final VarIndexing indexing = StmtUtils.toExpr(edge.getStmt(), VarIndexing.all(0)).getIndexing();
+			for (final VarDecl<?> var : cfa.getVars()) {
+				for (int i = 0; i <= indexing.get(var); i++) {
+					var.getConstDecl(i);
+				}
+			}
+		}
+	}
+
+	/* Stops the worker threads and returns the solvers to the pool, both are recreated by the next check */
+	public void release() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		workerDomains.forEach(PredDomain::release);
+	}
+
+	public static Abstractor create(final CFA cfa, final SearchStrategy strategy, final AbstractionMode mode,
+			final int cacheSize, final int threads, final int maxCounterexamples) {
+		return new Abstractor(cfa, strategy, mode, cacheSize, threads, maxCounterexamples);
+	}
+
+	public PostCache getPostCache() {
+		return domain.getPostCache();
 	}
 
-	public static Abstractor create(final CFA cfa, final SearchStrategy strategy) {
-		return new Abstractor(cfa, strategy);
+	/* Solver calls of the domains of every worker */
+	public long getSolverCalls() {
+		return workerDomains.stream().mapToLong(PredDomain::getSolverCalls).sum();
 	}
 
 	////
 
-	public AbstractionResult check(final PredPrecision precision) {
-		return new AbstractionBuilder(precision).buildAbstraction();
+	public AbstractionResult check(final PredPrecision precision, final CancellationToken deadline) {
+		if (workerDomains.size() == 1) {
+			return new AbstractionBuilder(precision, deadline).buildAbstraction();
+		} else {
+			return new ParallelAbstractionBuilder(precision, deadline).buildAbstraction();
+		}
+	}
+
+	/* Drops the whole graph, the next check starts from the initial location */
+	public void reset() {
+		reachedSet.clear();
+		pendingEdges.clear();
+		rootNode = null;
+	}
+
+	/*
+	 * Removes the node and its subtree, along with its siblings reached by the
+	 * same CFA edge, so that the parent can be expanded along that edge with a
+	 * refined precision. Nodes covered by removed nodes are uncovered.
+	 */
+	public void prune(final ArgNode node) {
+		checkNotNull(node);
+		checkState(reachedSet.contains(node));
+
+		if (!node.getInEdge().isPresent()) {
+			reset();
+			return;
+		}
+
+		final ArgNode parent = node.getParent().get();
+		final CFA.Edge edge = node.getInEdge().get().getEdge();
+
+		final List<ArgNode> siblings = parent.getOutEdges().stream().filter(e -> e.getEdge().equals(edge))
+				.map(ArgEdge::getTarget).collect(toList());
+
+		for (final ArgNode sibling : siblings) {
+			final List<ArgNode> removedNodes = sibling.getDescendants().collect(toList());
+			for (final ArgNode removedNode : removedNodes) {
+				reachedSet.remove(removedNode);
+				pendingEdges.removeAll(removedNode);
+				removedNode.uncover();
+				for (final ArgNode coveredNode : new ArrayList<>(removedNode.getCoveredNodes())) {
+					coveredNode.uncover();
+				}
+			}
+			sibling.prune();
+		}
+
+		pendingEdges.put(parent, edge);
+	}
+
+	/* Nodes removed by pruning an earlier node of the collection are skipped */
+	public void prune(final Collection<ArgNode> nodes) {
+		for (final ArgNode node : nodes) {
+			if (reachedSet.contains(node)) {
+				prune(node);
+			}
+		}
+	}
+
+	/* Uncovered nodes that are not expanded yet or have pruned edges to expand again */
+	private List<ArgNode> getNodesToExpand() {
+		if (rootNode == null) {
+			rootNode = ArgNode.root(cfa.getInitLoc(), PredState.top());
+			reachedSet.add(rootNode);
+		}
+
+		return reachedSet.getNodes().stream()
+				.filter(n -> !n.isCovered() && (!n.isExpanded() || pendingEdges.containsKey(n))).collect(toList());
 	}
 
 	private final class AbstractionBuilder {
 		private final PredPrecision precision;
-		private final Collection<ArgNode> reachedSet;
-		private final Waitlist waitlist;
+		private final CancellationToken deadline;
 
-		public AbstractionBuilder(final PredPrecision precision) {
+		public AbstractionBuilder(final PredPrecision precision, final CancellationToken deadline) {
 			this.precision = checkNotNull(precision);
-			reachedSet = new ArrayList<>();
-			waitlist = strategy.createWaitlist();
+			this.deadline = checkNotNull(deadline);
+			waitlist.clear();
 		}
 
 		public AbstractionResult buildAbstraction() {
-			// TODO Auto-generated method stub
-			throw new UnsupportedOperationException("TODO: auto-generated method stub");
+			waitlist.addAll(getNodesToExpand());
+
+			final List<ArgNode> errorNodes = new ArrayList<>();
+			while (!waitlist.isEmpty() && errorNodes.size() < maxCounterexamples) {
+				deadline.throwIfCancelled();
+
+				final ArgNode node = waitlist.remove();
+
+				if (node.getLoc().equals(cfa.getErrorLoc())) {
+					errorNodes.add(node);
+					continue;
+				}
+
+				if (node.isExpanded()) {
+					expand(node, pendingEdges.removeAll(node));
+				} else {
+					close(node);
+					if (!node.isCovered()) {
+						expand(node, node.getLoc().getOutEdges());
+					}
+				}
+			}
+
+			if (errorNodes.isEmpty()) {
+				return AbstractionResult.success(rootNode);
+			} else {
+				return AbstractionResult.failure(errorNodes);
+			}
 		}
 
 		private void close(final ArgNode node) {
-			// TODO Auto-generated method stub
-			throw new UnsupportedOperationException("TODO: auto-generated method stub");
+			for (final ArgNode reachedNode : reachedSet.getCoverCandidates(node)) {
+				if (reachedNode != node && !reachedNode.isCovered()
+						&& domain.isLessOrEqual(node.getState(), reachedNode.getState())) {
+					node.coverWith(reachedNode);
+					return;
+				}
+			}
+		}
+
+		private void expand(final ArgNode node, final Collection<CFA.Edge> edges) {
+			for (final CFA.Edge edge : edges) {
+				for (final PredState succState : domain.getSuccStates(node.getState(), precision, edge)) {
+					if (domain.isBottom(succState)) {
+						continue;
+					}
+					final ArgNode succNode = node.createChild(edge, succState);
+					reachedSet.add(succNode);
+					waitlist.add(succNode);
+				}
+			}
+			node.markAsExpanded();
+		}
+	}
+
+	/*
+	 * Workers take nodes from their own waitlist or steal them from the others,
+	 * and decide coverage and compute successors with their own domain without
+	 * holding the lock. The graph, the reached set and the pending edges are
+	 * only changed under the lock, and the children of a node are added
+	 * together with marking it expanded, so the graph is well-formed whenever
+	 * the lock is free. Idle workers wait on the lock until a node is added or
+	 * every node is processed. Workers stop when enough error nodes are taken.
+	 */
+	private final class ParallelAbstractionBuilder {
+		private final PredPrecision precision;
+		private final CancellationToken deadline;
+		private final Object lock;
+		private final AtomicInteger unfinishedNodes;
+		private final List<ArgNode> errorNodes;
+
+		private volatile boolean stopped;
+
+		public ParallelAbstractionBuilder(final PredPrecision precision, final CancellationToken deadline) {
+			this.precision = checkNotNull(precision);
+			this.deadline = checkNotNull(deadline);
+			lock = new Object();
+			unfinishedNodes = new AtomicInteger();
+			errorNodes = new ArrayList<>();
+			stopped = false;
+			workerWaitlist.clear();
+		}
+
+		public AbstractionResult buildAbstraction() {
+			final int workers = workerWaitlist.getWorkers();
+
+			final List<ArgNode> nodes = getNodesToExpand();
+			for (int i = 0; i < nodes.size(); i++) {
+				unfinishedNodes.incrementAndGet();
+				workerWaitlist.add(i % workers, nodes.get(i));
+			}
+
+			if (executor == null) {
+				executor = Executors.newFixedThreadPool(workers);
+			}
+
+			final List<Future<?>> futures = new ArrayList<>(workers);
+			for (int w = 0; w < workers; w++) {
+				final int worker = w;
+				futures.add(executor.submit(() -> work(worker)));
+			}
+
+			/* Every worker is waited for, so no domain is in use when the solvers are released */
+			RuntimeException failure = null;
+			for (final Future<?> future : futures) {
+				try {
+					getUnchecked(future);
+				} catch (final RuntimeException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+
+			if (errorNodes.isEmpty()) {
+				return AbstractionResult.success(rootNode);
+			} else {
+				return AbstractionResult.failure(errorNodes);
+			}
+		}
+
+		/* Nodes are counted from being added until processed, so no node is left when the count is 0 */
+		private void work(final int worker) {
+			final PredDomain domain = workerDomains.get(worker);
+			try {
+				while (!stopped) {
+					deadline.throwIfCancelled();
+
+					final ArgNode node = workerWaitlist.poll(worker);
+					if (node == null) {
+						if (unfinishedNodes.get() == 0) {
+							return;
+						}
+						awaitNodes();
+						continue;
+					}
+
+					try {
+						if (node.getLoc().equals(cfa.getErrorLoc())) {
+							addErrorNode(node);
+						} else {
+							process(worker, domain, node);
+						}
+					} finally {
+						if (unfinishedNodes.decrementAndGet() == 0) {
+							synchronized (lock) {
+								lock.notifyAll();
+							}
+						}
+					}
+				}
+			} finally {
+				synchronized (lock) {
+					stopped = true;
+					lock.notifyAll();
+				}
+			}
 		}
 
-		private void expand(final ArgNode node) {
-			// TODO Auto-generated method stub
-			throw new UnsupportedOperationException("TODO: auto-generated method stub");
+		/* Nodes are only added under the lock, so none is missed; the wait is timed to poll the deadline */
+		private void awaitNodes() {
+			synchronized (lock) {
+				if (!stopped && unfinishedNodes.get() > 0 && workerWaitlist.isEmpty()) {
+					try {
+						lock.wait(IDLE_WAIT_MILLIS);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new CancellationException();
+					}
+				}
+			}
+		}
+
+		private void addErrorNode(final ArgNode node) {
+			synchronized (lock) {
+				if (errorNodes.size() < maxCounterexamples) {
+					errorNodes.add(node);
+				}
+				if (errorNodes.size() == maxCounterexamples) {
+					stopped = true;
+					lock.notifyAll();
+				}
+			}
+		}
+
+		private void process(final int worker, final PredDomain domain, final ArgNode node) {
+			final boolean expanded;
+			final Collection<CFA.Edge> edges;
+			synchronized (lock) {
+				expanded = node.isExpanded();
+				edges = expanded ? pendingEdges.removeAll(node) : node.getLoc().getOutEdges();
+			}
+
+			if (expanded || !close(domain, node)) {
+				expand(worker, domain, node, edges);
+			}
+		}
+
+		/* Candidates are checked without the lock, the cover is only added if the candidate is still uncovered */
+		private boolean close(final PredDomain domain, final ArgNode node) {
+			final List<ArgNode> candidates;
+			synchronized (lock) {
+				candidates = Streams.stream(reachedSet.getCoverCandidates(node))
+						.filter(n -> n != node && !n.isCovered()).collect(toList());
+			}
+
+			for (final ArgNode candidate : candidates) {
+				if (domain.isLessOrEqual(node.getState(), candidate.getState())) {
+					synchronized (lock) {
+						if (!candidate.isCovered()) {
+							node.coverWith(candidate);
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		private void expand(final int worker, final PredDomain domain, final ArgNode node,
+				final Collection<CFA.Edge> edges) {
+			final ImmutableListMultimap.Builder<CFA.Edge, PredState> builder = ImmutableListMultimap.builder();
+			for (final CFA.Edge edge : edges) {
+				for (final PredState succState : domain.getSuccStates(node.getState(), precision, edge)) {
+					if (!domain.isBottom(succState)) {
+						builder.put(edge, succState);
+					}
+				}
+			}
+			final ListMultimap<CFA.Edge, PredState> succStates = builder.build();
+
+			synchronized (lock) {
+				for (final Map.Entry<CFA.Edge, PredState> entry : succStates.entries()) {
+					final ArgNode succNode = node.createChild(entry.getKey(), entry.getValue());
+					reachedSet.add(succNode);
+					unfinishedNodes.incrementAndGet();
+					workerWaitlist.add(worker, succNode);
+				}
+				node.markAsExpanded();
+				if (!succStates.isEmpty()) {
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/* Rethrows the cancellation of a worker instead of wrapping it */
+	private static void getUnchecked(final Future<?> future) {
+		try {
+			Futures.getUnchecked(future);
+		} catch (final UncheckedExecutionException e) {
+			if (e.getCause() instanceof CancellationException) {
+				throw (CancellationException) e.getCause();
+			}
+			throw e;
 		}
 	}
 
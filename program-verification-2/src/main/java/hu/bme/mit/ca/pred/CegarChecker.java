@@ -1,49 +1,230 @@
 package hu.bme.mit.ca.pred;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+
+import hu.bme.mit.ca.common.CancellationToken;
+import hu.bme.mit.ca.common.SolverPool;
+import hu.bme.mit.ca.pred.arg.ArgNode;
+import hu.bme.mit.ca.pred.domain.PostCache;
+import hu.bme.mit.ca.pred.domain.PredDomain.AbstractionMode;
+import hu.bme.mit.ca.pred.domain.PredPrecision;
+import hu.bme.mit.ca.pred.domain.PredSimplifier;
+import hu.bme.mit.ca.pred.waitlist.ErrorDistance;
 import hu.bme.mit.ca.pred.waitlist.FifoWaitlist;
 import hu.bme.mit.ca.pred.waitlist.LifoWaitlist;
+import hu.bme.mit.ca.pred.waitlist.PriorityWaitlist;
 import hu.bme.mit.ca.pred.waitlist.Waitlist;
 import hu.bme.mit.theta.cfa.CFA;
 
 public final class CegarChecker implements SafetyChecker {
+	private static final int NO_TIMEOUT = Integer.MAX_VALUE;
+	private static final int DEFAULT_CACHE_SIZE = 10_000;
+
 	private final Abstractor abstractor;
 	private final Refiner refiner;
+	private final PredSimplifier simplifier;
+	private final int timeout;
+	private final CancellationToken token;
 
-	private CegarChecker(final CFA cfa, final SearchStrategy strategy) {
-		checkNotNull(cfa);
-		checkNotNull(strategy);
-		abstractor = Abstractor.create(cfa, strategy);
+	private CegarChecker(final Builder builder) {
+		abstractor = Abstractor.create(builder.cfa, builder.strategy, builder.mode, builder.cacheSize,
+				builder.threads, builder.maxCounterexamples);
 		refiner = Refiner.create();
+		simplifier = PredSimplifier.create();
+		timeout = builder.timeout;
+		token = CancellationToken.create();
 	}
 
 	public static CegarChecker create(final CFA cfa, final SearchStrategy strategy) {
-		return new CegarChecker(cfa, strategy);
+		return builder(cfa, strategy).build();
+	}
+
+	/* Every other setting is optional, with the defaults of create */
+	public static Builder builder(final CFA cfa, final SearchStrategy strategy) {
+		return new Builder(cfa, strategy);
+	}
+
+	/* Hit and miss counters of the abstract successor cache, kept across checks */
+	public PostCache getPostCache() {
+		return abstractor.getPostCache();
+	}
+
+	/* Counts the interpolant predicates found redundant, kept across checks */
+	public PredSimplifier getSimplifier() {
+		return simplifier;
+	}
+
+	/* Solver calls of the abstraction, the refinement and the predicate simplification, kept across checks */
+	public long getSolverCalls() {
+		return abstractor.getSolverCalls() + refiner.getSolverCalls() + simplifier.getSolverCalls();
+	}
+
+	/* Stops the running check and every later check of this checker with a timeout result */
+	public void cancel() {
+		token.cancel();
 	}
 
 	@Override
 	public SafetyResult check() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException("TODO: auto-generated method stub");
+		final Stopwatch stopwatch = Stopwatch.createStarted();
+		final CancellationToken deadline = token.withTimeout(timeout, TimeUnit.SECONDS);
+
+		abstractor.reset();
+		PredPrecision precision = PredPrecision.empty();
+
+		try {
+			while (true) {
+				final AbstractionResult abstractionResult = abstractor.check(precision, deadline);
+				if (abstractionResult.isSuccess()) {
+					return SafetyResult.safe(abstractionResult.asSuccess().getRootNode());
+				}
+
+				final List<ArgNode> errorNodes = abstractionResult.asFailure().getErrorNodes();
+				final List<ArgNode> pruneNodes = new ArrayList<>(errorNodes.size());
+
+				for (final ArgNode errorNode : errorNodes) {
+					deadline.throwIfCancelled();
+
+					final RefinementResult refinementResult = refiner.refine(errorNode);
+					if (refinementResult.isFailure()) {
+						return SafetyResult.unsafe(errorNode);
+					}
+
+					precision = simplifier.join(precision, refinementResult.asSuccess().getPrecision());
+					pruneNodes.add(refinementResult.asSuccess().getPruneNode());
+				}
+
+				/* The graph above the first node with a non-trivial interpolant is kept */
+				abstractor.prune(pruneNodes);
+			}
+		} catch (final CancellationException e) {
+			return SafetyResult.timeout(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+		} finally {
+			abstractor.release();
+			refiner.release();
+			simplifier.release();
+		}
+	}
+
+	public static final class Builder {
+		private final CFA cfa;
+		private final SearchStrategy strategy;
+		private int timeout;
+		private AbstractionMode mode;
+		private int cacheSize;
+		private int threads;
+		private int maxCounterexamples;
+
+		private Builder(final CFA cfa, final SearchStrategy strategy) {
+			this.cfa = checkNotNull(cfa);
+			this.strategy = checkNotNull(strategy);
+			timeout = NO_TIMEOUT;
+			mode = AbstractionMode.ENUMERATION;
+			cacheSize = DEFAULT_CACHE_SIZE;
+			threads = 1;
+			maxCounterexamples = 1;
+		}
+
+		/* In seconds, a check returns a timeout result after it */
+		public Builder timeout(final int timeout) {
+			checkArgument(timeout >= 0);
+			this.timeout = timeout;
+			return this;
+		}
+
+		public Builder abstractionMode(final AbstractionMode mode) {
+			this.mode = checkNotNull(mode);
+			return this;
+		}
+
+		/* At most cacheSize abstract successor sets are cached, 0 disables the cache */
+		public Builder cacheSize(final int cacheSize) {
+			checkArgument(cacheSize >= 0);
+			this.cacheSize = cacheSize;
+			return this;
+		}
+
+		/*
+		 * The graph is expanded by the given number of threads, each with its own
+		 * solvers. The order of the search strategy is only kept per thread. Two
+		 * solvers per thread and three for the refinement are leased at once.
+		 */
+		public Builder threads(final int threads) {
+			checkArgument(threads >= 1);
+			checkArgument(2 * threads + 3 <= SolverPool.getDefault().getMaxLive(),
+					"%s threads need more solvers than the pool allows", threads);
+			this.threads = threads;
+			return this;
+		}
+
+		/*
+		 * Up to maxCounterexamples abstract error nodes are collected in each
+		 * iteration, and the precisions of their refinements are joined.
+		 */
+		public Builder maxCounterexamples(final int maxCounterexamples) {
+			checkArgument(maxCounterexamples >= 1);
+			this.maxCounterexamples = maxCounterexamples;
+			return this;
+		}
+
+		public CegarChecker build() {
+			return new CegarChecker(this);
+		}
 	}
 
 	public enum SearchStrategy {
 		BREADTH_FIRST {
 			@Override
-			Waitlist createWaitlist() {
+			Waitlist createWaitlist(final CFA cfa) {
 				return FifoWaitlist.create();
 			}
 		},
 
 		DEPTH_FIRST {
 			@Override
-			Waitlist createWaitlist() {
+			Waitlist createWaitlist(final CFA cfa) {
 				return LifoWaitlist.create();
 			}
+		},
+
+		/* Nodes closest to the error location in the CFA first */
+		ERROR_DISTANCE {
+			@Override
+			Waitlist createWaitlist(final CFA cfa) {
+				final ErrorDistance distance = ErrorDistance.of(cfa);
+				return PriorityWaitlist.create(n -> distance.get(n.getLoc()));
+			}
+		},
+
+		/* Deepest nodes of the ARG first */
+		ARG_DEPTH {
+			@Override
+			Waitlist createWaitlist(final CFA cfa) {
+				return PriorityWaitlist.create(n -> -n.getDepth());
+			}
+		},
+
+		/* Pseudorandom order, the same in every run */
+		RANDOM {
+			@Override
+			Waitlist createWaitlist(final CFA cfa) {
+				final Random random = new Random(RANDOM_SEED);
+				return PriorityWaitlist.create(n -> random.nextInt());
+			}
 		};
 
-		abstract Waitlist createWaitlist();
+		private static final long RANDOM_SEED = 0;
+
+		abstract Waitlist createWaitlist(final CFA cfa);
 	}
 
 }
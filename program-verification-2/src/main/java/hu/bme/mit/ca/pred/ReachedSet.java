@@ -0,0 +1,166 @@
+package hu.bme.mit.ca.pred;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
+
+import hu.bme.mit.ca.pred.arg.ArgNode;
+import hu.bme.mit.ca.pred.domain.PredState;
+import hu.bme.mit.theta.cfa.CFA.Loc;
+
+/*
+ * Reached ARG nodes partitioned by location. With the signature index, the
+ * nodes of a location are further grouped by the predicates their state
+ * decides (regardless of polarity), and within a group by the predicates
+ * their state holds. A node can only be covered syntactically by a node
+ * whose signature is a subset of its own, and in each such group only by
+ * the state that agrees with it on the predicates of the group, as the
+ * others contradict it. These nodes are returned first, followed by the
+ * other nodes of the location, which may still cover it semantically.
+ */
+final class ReachedSet {
+	private final boolean signatureIndexed;
+	private final Set<ArgNode> nodes;
+	private final Map<Loc, Partition> partitions;
+
+	private ReachedSet(final boolean signatureIndexed) {
+		this.signatureIndexed = signatureIndexed;
+		nodes = new LinkedHashSet<>();
+		partitions = new HashMap<>();
+	}
+
+	public static ReachedSet create() {
+		return new ReachedSet(false);
+	}
+
+	public static ReachedSet withSignatureIndex() {
+		return new ReachedSet(true);
+	}
+
+	////
+
+	public void add(final ArgNode node) {
+		if (nodes.add(node)) {
+			partitions.computeIfAbsent(node.getLoc(), l -> new Partition()).add(node);
+		}
+	}
+
+	public void remove(final ArgNode node) {
+		if (nodes.remove(node)) {
+			partitions.get(node.getLoc()).remove(node);
+		}
+	}
+
+	public boolean contains(final ArgNode node) {
+		return nodes.contains(node);
+	}
+
+	public void clear() {
+		nodes.clear();
+		partitions.clear();
+	}
+
+	public int size() {
+		return nodes.size();
+	}
+
+	/* Every reached node, in the order of reaching */
+	public Collection<ArgNode> getNodes() {
+		return Collections.unmodifiableSet(nodes);
+	}
+
+	/* Nodes that may cover the given node, those with an equal state first, as a view of the reached nodes */
+	public Iterable<ArgNode> getCoverCandidates(final ArgNode node) {
+		checkNotNull(node);
+		final Partition partition = partitions.get(node.getLoc());
+		if (partition == null) {
+			return Collections.emptyList();
+		} else {
+			return partition.getCandidates(node);
+		}
+	}
+
+	////
+
+	private final class Partition {
+		private final Set<ArgNode> nodes;
+		private final Map<BitSet, SetMultimap<BitSet, ArgNode>> bySignature;
+
+		private Partition() {
+			nodes = new LinkedHashSet<>();
+			bySignature = new HashMap<>();
+		}
+
+		private void add(final ArgNode node) {
+			nodes.add(node);
+			if (signatureIndexed) {
+				final PredState state = node.getState();
+				bySignature.computeIfAbsent(state.getSignature(), s -> LinkedHashMultimap.create())
+						.put(state.getPositivePredicates(), node);
+			}
+		}
+
+		private void remove(final ArgNode node) {
+			nodes.remove(node);
+			if (signatureIndexed) {
+				final PredState state = node.getState();
+				final BitSet signature = state.getSignature();
+				final SetMultimap<BitSet, ArgNode> group = bySignature.get(signature);
+				group.remove(state.getPositivePredicates(), node);
+				if (group.isEmpty()) {
+					bySignature.remove(signature);
+				}
+			}
+		}
+
+		/* The nodes with all their literals in the node come first, the rest are only filtered when reached */
+		private Iterable<ArgNode> getCandidates(final ArgNode node) {
+			if (!signatureIndexed) {
+				return Collections.unmodifiableSet(nodes);
+			}
+
+			final Set<ArgNode> matches = getSyntacticCandidates(node);
+			return Iterables.concat(matches, Iterables.filter(nodes, n -> !matches.contains(n)));
+		}
+
+		/* Only the signatures of the location are scanned */
+		private Set<ArgNode> getSyntacticCandidates(final ArgNode node) {
+
+			final BitSet signature = node.getState().getSignature();
+			final BitSet positive = node.getState().getPositivePredicates();
+			final Deque<ArgNode> candidates = new ArrayDeque<>();
+			for (final Map.Entry<BitSet, SetMultimap<BitSet, ArgNode>> entry : bySignature.entrySet()) {
+				final BitSet groupSignature = entry.getKey();
+				if (groupSignature.equals(signature)) {
+					for (final ArgNode candidate : entry.getValue().get(positive)) {
+						candidates.addFirst(candidate);
+					}
+				} else if (isSubset(groupSignature, signature)) {
+					final BitSet groupPositive = (BitSet) positive.clone();
+					groupPositive.and(groupSignature);
+					candidates.addAll(entry.getValue().get(groupPositive));
+				}
+			}
+			return new LinkedHashSet<>(candidates);
+		}
+	}
+
+	private static boolean isSubset(final BitSet bits1, final BitSet bits2) {
+		final BitSet difference = (BitSet) bits1.clone();
+		difference.andNot(bits2);
+		return difference.isEmpty();
+	}
+
+}
@@ -10,8 +10,8 @@ abstract class RefinementResult {
 	private RefinementResult() {
 	}
 
-	public static Success success(final PredPrecision precision) {
-		return new Success(precision);
+	public static Success success(final PredPrecision precision, final ArgNode pruneNode) {
+		return new Success(precision, pruneNode);
 	}
 
 	public static Failure failure(final ArgNode errorNode) {
@@ -38,15 +38,22 @@ abstract class RefinementResult {
 
 	public static final class Success extends RefinementResult {
 		private final PredPrecision precision;
+		private final ArgNode pruneNode;
 
-		private Success(final PredPrecision precision) {
+		private Success(final PredPrecision precision, final ArgNode pruneNode) {
 			this.precision = checkNotNull(precision);
+			this.pruneNode = checkNotNull(pruneNode);
 		}
 
 		public PredPrecision getPrecision() {
 			return precision;
 		}
 
+		/* First node of the counterexample whose abstraction was too coarse */
+		public ArgNode getPruneNode() {
+			return pruneNode;
+		}
+
 		@Override
 		public boolean isSuccess() {
 			return true;
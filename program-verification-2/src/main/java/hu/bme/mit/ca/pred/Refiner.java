@@ -1,18 +1,26 @@
 package hu.bme.mit.ca.pred;
 
+import static com.google.common.base.Preconditions.checkState;
 import static hu.bme.mit.theta.core.type.booltype.BoolExprs.True;
 import static hu.bme.mit.theta.core.utils.ExprUtils.getAtoms;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toSet;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
-import hu.bme.mit.ca.pred.arg.ArgEdge;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.SetMultimap;
+
+import hu.bme.mit.ca.common.SolverPool;
 import hu.bme.mit.ca.pred.arg.ArgNode;
 import hu.bme.mit.ca.pred.arg.ArgPath;
 import hu.bme.mit.ca.pred.domain.PredPrecision;
+import hu.bme.mit.theta.cfa.CFA;
 import hu.bme.mit.theta.core.type.Expr;
 import hu.bme.mit.theta.core.type.booltype.BoolType;
 import hu.bme.mit.theta.core.utils.PathUtils;
@@ -23,84 +31,232 @@ import hu.bme.mit.theta.solver.Interpolant;
 import hu.bme.mit.theta.solver.ItpMarker;
 import hu.bme.mit.theta.solver.ItpPattern;
 import hu.bme.mit.theta.solver.ItpSolver;
-import hu.bme.mit.theta.solver.z3.Z3SolverFactory;
+import hu.bme.mit.theta.solver.Solver;
+import hu.bme.mit.theta.solver.SolverStatus;
 
+/*
+ * Interpolates along the shortest infeasible segment of counterexamples. The
+ * path is asserted node by node until it becomes infeasible, then the segment
+ * ending there is extended backwards until it is infeasible on its own. Only
+ * this segment is interpolated, nodes outside of it get no predicates.
+ *
+ * The path of the previous refinement stays asserted, one solver scope per
+ * node, so only the nodes below the first one that differs from it are
+ * asserted and checked again. After pruning, the next counterexample shares
+ * the graph above the pruned node, so this common prefix is usually long.
+ * The unfolding of every CFA edge is cached.
+ */
 final class Refiner {
 
-	private final ItpSolver solver;
+	private SolverPool.Lease<Solver> solverLease;
+	private SolverPool.Lease<ItpSolver> itpSolverLease;
+	private final Map<CFA.Edge, StmtUnfoldResult> unfoldResults;
+
+	/* Nodes asserted on the solver stack, with their indexings */
+	private final List<ArgNode> assertedNodes;
+	private final List<VarIndexing> indexings;
+
+	/* Number of asserted nodes whose path from the root is known to be feasible */
+	private int feasibleCount;
+
+	private long solverCalls;
 
 	private Refiner() {
-		solver = Z3SolverFactory.getInstace().createItpSolver();
+		solverLease = null;
+		itpSolverLease = null;
+		unfoldResults = new HashMap<>();
+		assertedNodes = new ArrayList<>();
+		indexings = new ArrayList<>();
+		feasibleCount = 0;
+		solverCalls = 0;
 	}
 
 	public static Refiner create() {
 		return new Refiner();
 	}
 
-	public RefinementResult refine(final ArgNode errorNode) {
-		solver.push();
+	/* Satisfiability and interpolation checks of every refinement so far */
+	public long getSolverCalls() {
+		return solverCalls;
+	}
 
-		final ArgPath path = ArgPath.to(errorNode);
-		final int nodeCount = path.getNodes().size();
+	/* Returns the solvers to the pool, the next refinement asserts its path from the root */
+	public void release() {
+		assertedNodes.clear();
+		indexings.clear();
+		feasibleCount = 0;
 
-		final List<ItpMarker> markers = createMarkers(nodeCount + 1);
-		final ItpPattern pattern = solver.createSeqPattern(markers);
-		final List<VarIndexing> indexings = new ArrayList<>(nodeCount);
+		if (solverLease != null) {
+			solverLease.close();
+			solverLease = null;
+		}
+		if (itpSolverLease != null) {
+			itpSolverLease.close();
+			itpSolverLease = null;
+		}
+	}
 
-		indexings.add(VarIndexing.all(0));
+	public RefinementResult refine(final ArgNode errorNode) {
+		final ArgPath path = ArgPath.to(errorNode);
 
-		solver.add(markers.get(0), PathUtils.unfold(path.getNode(0).getState().toExpr(), indexings.get(0)));
+		final int end;
+		try {
+			end = findInfeasiblePrefix(path);
+		} catch (final RuntimeException e) {
+			popTo(0);
+			throw e;
+		}
 
-		for (int i = 1; i < nodeCount; i++) {
-			final VarIndexing sourceIndexing = indexings.get(i - 1);
-			final ArgEdge edge = path.getEdge(i - 1);
+		if (end < 0) {
+			return RefinementResult.failure(errorNode);
+		} else {
+			return interpolate(path, end);
+		}
+	}
 
-			final StmtUnfoldResult unfoldResult = StmtUtils.toExpr(edge.getEdge().getStmt(), VarIndexing.all(0));
-			final VarIndexing offset = unfoldResult.getIndexing();
+	/* Index of the last node of the shortest infeasible prefix, or -1 if the whole path is feasible */
+	private int findInfeasiblePrefix(final ArgPath path) {
+		final int nodeCount = path.getNodes().size();
 
-			final VarIndexing targetIndexing = sourceIndexing.add(offset);
-			final Collection<? extends Expr<BoolType>> edgeExprs = unfoldResult.getExprs();
+		int common = 0;
+		while (common < assertedNodes.size() && common < nodeCount
+				&& assertedNodes.get(common) == path.getNode(common)) {
+			common++;
+		}
 
-			final Collection<Expr<BoolType>> transitionExprs = edgeExprs.stream()
-					.map(e -> PathUtils.unfold(e, sourceIndexing)).collect(toList());
-			final Expr<BoolType> targetExpr = PathUtils.unfold(path.getNode(i).getState().toExpr(), targetIndexing);
+		/* The shortest infeasible prefix of the previous path is a prefix of this one as well */
+		if (common > feasibleCount) {
+			popTo(feasibleCount + 1);
+			return feasibleCount;
+		}
 
-			indexings.add(targetIndexing);
-			solver.add(markers.get(i), transitionExprs);
-			solver.add(markers.get(i), targetExpr);
+		popTo(common);
+		for (int i = common; i < nodeCount; i++) {
+			assertNode(path, i);
+			if (check(solver()).isUnsat()) {
+				return i;
+			}
+			feasibleCount = i + 1;
 		}
+		return -1;
+	}
 
-		solver.add(markers.get(nodeCount), True());
+	/* The segment is extended backwards from the end node until it is infeasible */
+	private RefinementResult interpolate(final ArgPath path, final int end) {
+		itpSolver().push();
+		try {
+			final LinkedList<ItpMarker> markers = new LinkedList<>();
+			final ItpMarker lastMarker = itpSolver().createMarker();
+			itpSolver().add(lastMarker, True());
 
-		solver.check();
-		final boolean concretizable = solver.getStatus().isSat();
+			int start = end;
+			while (true) {
+				final ItpMarker marker = itpSolver().createMarker();
+				itpSolver().add(marker, getStateExpr(path, start));
+				if (start < end) {
+					itpSolver().add(markers.getFirst(), getTransitionExprs(path, start + 1));
+				}
+				markers.addFirst(marker);
 
-		final RefinementResult result;
+				check(itpSolver());
+				if (itpSolver().getStatus().isUnsat()) {
+					break;
+				}
+				checkState(start > 0);
+				start--;
+			}
+
+			final ItpPattern pattern = itpSolver()
+					.createSeqPattern(ImmutableList.<ItpMarker>builder().addAll(markers).add(lastMarker).build());
+			final Interpolant interpolant = itpSolver().getInterpolant(pattern);
 
-		if (concretizable) {
-			result = RefinementResult.failure(errorNode);
-		} else {
 			final List<Expr<BoolType>> interpolants = new ArrayList<>();
-			final Interpolant interpolant = solver.getInterpolant(pattern);
-			for (int i = 0; i < markers.size() - 1; i++) {
-				interpolants.add(PathUtils.foldin(interpolant.eval(markers.get(i)), indexings.get(i)));
+			for (int i = start; i <= end; i++) {
+				interpolants.add(PathUtils.foldin(interpolant.eval(markers.get(i - start)), indexings.get(i)));
+			}
+			/* Predicates of an interpolant are only tracked at the location of its node */
+			final SetMultimap<CFA.Loc, Expr<BoolType>> atoms = HashMultimap.create();
+			for (int i = 0; i < interpolants.size(); i++) {
+				atoms.putAll(path.getNode(start + i).getLoc(), getAtoms(interpolants.get(i)));
 			}
-			final Collection<Expr<BoolType>> atoms = interpolants.stream().flatMap(e -> getAtoms(e).stream())
-					.collect(toSet());
 			final PredPrecision precision = PredPrecision.of(atoms);
-			result = RefinementResult.success(precision);
+			return RefinementResult.success(precision, path.getNode(start + firstNonTrue(interpolants)));
+		} finally {
+			itpSolver().pop();
 		}
+	}
+
+	private void assertNode(final ArgPath path, final int i) {
+		final VarIndexing indexing;
+		if (i == 0) {
+			indexing = VarIndexing.all(0);
+		} else {
+			indexing = indexings.get(i - 1).add(unfold(path.getEdge(i - 1).getEdge()).getIndexing());
+		}
+
+		solver().push();
+		assertedNodes.add(path.getNode(i));
+		indexings.add(indexing);
+
+		if (i > 0) {
+			solver().add(getTransitionExprs(path, i));
+		}
+		solver().add(getStateExpr(path, i));
+	}
+
+	/* Uses the indexings of the asserted nodes */
+	private Expr<BoolType> getStateExpr(final ArgPath path, final int i) {
+		return PathUtils.unfold(path.getNode(i).getState().toExpr(), indexings.get(i));
+	}
+
+	/* The transition into the i-th node */
+	private Collection<Expr<BoolType>> getTransitionExprs(final ArgPath path, final int i) {
+		final VarIndexing sourceIndexing = indexings.get(i - 1);
+		return unfold(path.getEdge(i - 1).getEdge()).getExprs().stream()
+				.map(e -> PathUtils.unfold(e, sourceIndexing)).collect(toList());
+	}
 
-		solver.pop();
-		return result;
+	private StmtUnfoldResult unfold(final CFA.Edge edge) {
+		return unfoldResults.computeIfAbsent(edge, e -> StmtUtils.toExpr(e.getStmt(), VarIndexing.all(0)));
 	}
 
-	private List<ItpMarker> createMarkers(final int count) {
-		final List<ItpMarker> markers = new ArrayList<>(count);
-		for (int i = 0; i < count; i++) {
-			markers.add(solver.createMarker());
+	private SolverStatus check(final Solver solver) {
+		solverCalls++;
+		return solver.check();
+	}
+
+	private Solver solver() {
+		if (solverLease == null) {
+			solverLease = SolverPool.getDefault().acquire();
+		}
+		return solverLease.get();
+	}
+
+	private ItpSolver itpSolver() {
+		if (itpSolverLease == null) {
+			itpSolverLease = SolverPool.getDefault().acquireItp();
+		}
+		return itpSolverLease.get();
+	}
+
+	private void popTo(final int count) {
+		final int n = assertedNodes.size() - count;
+		if (n > 0) {
+			solver().pop(n);
+			assertedNodes.subList(count, assertedNodes.size()).clear();
+			indexings.subList(count, indexings.size()).clear();
+		}
+		feasibleCount = Math.min(feasibleCount, count);
+	}
+
+	/* The last node of the segment has the interpolant False, so there is always such an index */
+	private static int firstNonTrue(final List<Expr<BoolType>> interpolants) {
+		for (int i = 0; i < interpolants.size(); i++) {
+			if (!interpolants.get(i).equals(True())) {
+				return i;
+			}
 		}
-		return markers;
+		throw new AssertionError();
 	}
 
 }
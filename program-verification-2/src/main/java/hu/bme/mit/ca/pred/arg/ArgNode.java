@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import hu.bme.mit.ca.pred.domain.PredState;
 import hu.bme.mit.theta.cfa.CFA.Edge;
@@ -19,15 +20,22 @@ public final class ArgNode {
 
 	private final Optional<ArgEdge> inEdge;
 	private final Collection<ArgEdge> outEdges;
+	private final int depth;
+
+	private final Collection<ArgNode> coveredNodes;
 
 	private Optional<ArgNode> coveringNode;
+	private boolean expanded;
 
 	private ArgNode(final Optional<ArgEdge> inEdge, final Loc loc, final PredState state) {
 		this.loc = checkNotNull(loc);
 		this.state = checkNotNull(state);
 		this.inEdge = checkNotNull(inEdge);
 		this.outEdges = new ArrayList<>();
+		this.depth = inEdge.map(e -> e.getSource().depth + 1).orElse(0);
+		this.coveredNodes = new ArrayList<>();
 		this.coveringNode = Optional.empty();
+		this.expanded = false;
 		checkArgument(!inEdge.isPresent() || inEdge.get().getEdge().getTarget().equals(loc));
 	}
 
@@ -49,6 +57,11 @@ public final class ArgNode {
 		return state;
 	}
 
+	/* Number of edges from the root */
+	public int getDepth() {
+		return depth;
+	}
+
 	////
 
 	public Optional<ArgEdge> getInEdge() {
@@ -65,16 +78,34 @@ public final class ArgNode {
 		return coveringNode;
 	}
 
+	public Collection<ArgNode> getCoveredNodes() {
+		return Collections.unmodifiableCollection(coveredNodes);
+	}
+
 	public void coverWith(final ArgNode node) {
+		checkNotNull(node);
+		uncover();
+		node.coveredNodes.add(this);
 		this.coveringNode = Optional.of(node);
 	}
 
 	public void uncover() {
+		coveringNode.ifPresent(n -> n.coveredNodes.remove(this));
 		this.coveringNode = Optional.empty();
 	}
 
 	////
 
+	public boolean isExpanded() {
+		return expanded;
+	}
+
+	public void markAsExpanded() {
+		this.expanded = true;
+	}
+
+	////
+
 	public Optional<ArgNode> getParent() {
 		return inEdge.map(ArgEdge::getSource);
 	}
@@ -91,6 +122,11 @@ public final class ArgNode {
 		return outEdges.isEmpty();
 	}
 
+	/* This node and every node below it, parents before children */
+	public Stream<ArgNode> getDescendants() {
+		return Stream.concat(Stream.of(this), outEdges.stream().flatMap(e -> e.getTarget().getDescendants()));
+	}
+
 	////
 
 	public ArgNode createChild(final Edge edge, final PredState targetState) {
@@ -99,4 +135,10 @@ public final class ArgNode {
 		return outEdge.getTarget();
 	}
 
+	/* Detaches this node, together with its subtree, from its parent */
+	public void prune() {
+		checkArgument(inEdge.isPresent());
+		inEdge.get().getSource().outEdges.remove(inEdge.get());
+	}
+
 }
@@ -0,0 +1,36 @@
+package hu.bme.mit.ca.pred.domain;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Access-ordered map that drops its least recently used entry when it grows
+ * over its maximum size.
+ */
+final class LruMap<K, V> extends LinkedHashMap<K, V> {
+	private static final long serialVersionUID = 1L;
+
+	private final int maxSize;
+
+	private LruMap(final int maxSize) {
+		super(16, 0.75f, true);
+		checkArgument(maxSize >= 0);
+		this.maxSize = maxSize;
+	}
+
+	public static <K, V> LruMap<K, V> create(final int maxSize) {
+		return new LruMap<>(maxSize);
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+		return size() > maxSize;
+	}
+
+}
@@ -0,0 +1,119 @@
+package hu.bme.mit.ca.pred.domain;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import hu.bme.mit.theta.cfa.CFA.Edge;
+import hu.bme.mit.theta.core.type.Expr;
+import hu.bme.mit.theta.core.type.booltype.BoolType;
+
+/*
+ * Bounded LRU cache of abstract successors. The key contains the predicates
+ * of the target location only, so an entry stays valid while the precision
+ * grows at other locations. The cache is synchronized, so the domains of
+ * parallel workers may share it.
+ */
+public final class PostCache {
+	private final LruMap<Key, Collection<PredState>> entries;
+
+	private long hits;
+	private long misses;
+
+	private PostCache(final int maxSize) {
+		entries = LruMap.create(maxSize);
+		hits = 0;
+		misses = 0;
+	}
+
+	public static PostCache create(final int maxSize) {
+		return new PostCache(maxSize);
+	}
+
+	////
+
+	synchronized Collection<PredState> get(final PredState state, final Edge edge, final Set<Expr<BoolType>> predicates) {
+		final Collection<PredState> succStates = entries.get(new Key(state, edge, predicates));
+		if (succStates == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return succStates;
+	}
+
+	synchronized void put(final PredState state, final Edge edge, final Set<Expr<BoolType>> predicates,
+			final Collection<PredState> succStates) {
+		if (entries.getMaxSize() > 0) {
+			entries.put(new Key(state, edge, predicates), ImmutableList.copyOf(succStates));
+		}
+	}
+
+	/* Drops the entries, the counters are kept */
+	synchronized void clear() {
+		entries.clear();
+	}
+
+	////
+
+	public int getMaxSize() {
+		return entries.getMaxSize();
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "PostCache{size=" + entries.size() + ", maxSize=" + entries.getMaxSize() + ", hits=" + hits + ", misses=" + misses
+				+ "}";
+	}
+
+	////
+
+	private static final class Key {
+		private final PredState state;
+		private final Edge edge;
+		private final Set<Expr<BoolType>> predicates;
+		private final int hashCode;
+
+		private Key(final PredState state, final Edge edge, final Set<Expr<BoolType>> predicates) {
+			this.state = checkNotNull(state);
+			this.edge = checkNotNull(edge);
+			this.predicates = ImmutableSet.copyOf(predicates);
+			hashCode = 31 * (31 * state.hashCode() + edge.hashCode()) + this.predicates.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (obj instanceof Key) {
+				final Key that = (Key) obj;
+				return this.hashCode == that.hashCode && this.edge.equals(that.edge) && this.state.equals(that.state)
+						&& this.predicates.equals(that.predicates);
+			} else {
+				return false;
+			}
+		}
+	}
+
+}
@@ -1,95 +1,229 @@
 package hu.bme.mit.ca.pred.domain;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static hu.bme.mit.theta.core.decl.Decls.Const;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.And;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.Bool;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.Iff;
 import static hu.bme.mit.theta.core.type.booltype.BoolExprs.Not;
 import static java.util.stream.Collectors.toList;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
+import com.google.common.collect.ImmutableList;
+
+import hu.bme.mit.ca.common.SolverPool;
 import hu.bme.mit.theta.cfa.CFA.Edge;
+import hu.bme.mit.theta.cfa.CFA.Loc;
+import hu.bme.mit.theta.core.decl.ConstDecl;
 import hu.bme.mit.theta.core.model.Valuation;
 import hu.bme.mit.theta.core.type.Expr;
+import hu.bme.mit.theta.core.type.LitExpr;
+import hu.bme.mit.theta.core.type.booltype.BoolLitExpr;
 import hu.bme.mit.theta.core.type.booltype.BoolType;
 import hu.bme.mit.theta.core.utils.PathUtils;
 import hu.bme.mit.theta.core.utils.StmtUnfoldResult;
 import hu.bme.mit.theta.core.utils.StmtUtils;
 import hu.bme.mit.theta.core.utils.VarIndexing;
 import hu.bme.mit.theta.solver.Solver;
-import hu.bme.mit.theta.solver.z3.Z3SolverFactory;
+import hu.bme.mit.theta.solver.SolverStatus;
 
 public final class PredDomain {
-	private final Solver solver;
-	private final Solver liftSolver;
+	private static final String ACT_PREFIX = "__act_";
+	private static final int DEFAULT_CACHE_SIZE = 10_000;
+	private static final int LEQ_MEMO_SIZE = 100_000;
+	private static final int BOTTOM_MEMO_SIZE = 100_000;
+
+	private final AbstractionMode mode;
+	private final PostCache postCache;
+	private SolverPool.Lease<Solver> solverLease;
+	private SolverPool.Lease<Solver> liftSolverLease;
+	private final List<ConstDecl<BoolType>> activationLiterals;
+	private final Map<Entailment, Boolean> leqMemo;
+	private final Map<PredState, Boolean> bottomMemo;
+	private long solverCalls;
 
-	private PredDomain() {
-		solver = Z3SolverFactory.getInstace().createSolver();
-		liftSolver = Z3SolverFactory.getInstace().createSolver();
+	private PredDomain(final AbstractionMode mode, final PostCache postCache) {
+		this.mode = checkNotNull(mode);
+		this.postCache = checkNotNull(postCache);
+		solverLease = null;
+		liftSolverLease = null;
+		activationLiterals = new ArrayList<>();
+		leqMemo = LruMap.create(LEQ_MEMO_SIZE);
+		bottomMemo = LruMap.create(BOTTOM_MEMO_SIZE);
+		solverCalls = 0;
 	}
 
 	public static PredDomain create() {
-		return new PredDomain();
+		return create(AbstractionMode.ENUMERATION);
+	}
+
+	public static PredDomain create(final AbstractionMode mode) {
+		return create(mode, DEFAULT_CACHE_SIZE);
+	}
+
+	/* A cache size of 0 disables caching of abstract successors */
+	public static PredDomain create(final AbstractionMode mode, final int cacheSize) {
+		return create(mode, PostCache.create(cacheSize));
+	}
+
+	/* Every domain has its own solvers, but the domains of parallel workers may share a cache */
+	public static PredDomain create(final AbstractionMode mode, final PostCache postCache) {
+		return new PredDomain(mode, postCache);
+	}
+
+	public PostCache getPostCache() {
+		return postCache;
+	}
+
+	/* Satisfiability checks of the domain so far, including the ones lifting models */
+	public long getSolverCalls() {
+		return solverCalls;
+	}
+
+	/*
+	 * Returns the solvers to the pool, they are leased again on the next use.
+	 * The states of the check are dropped from the memos and the cache, as the
+	 * next check builds its states over a new index.
+	 */
+	public void release() {
+		leqMemo.clear();
+		bottomMemo.clear();
+		postCache.clear();
+		if (solverLease != null) {
+			solverLease.close();
+			solverLease = null;
+		}
+		if (liftSolverLease != null) {
+			liftSolverLease.close();
+			liftSolverLease = null;
+		}
+	}
+
+	private Solver solver() {
+		if (solverLease == null) {
+			solverLease = SolverPool.getDefault().acquire();
+		}
+		return solverLease.get();
+	}
+
+	private Solver liftSolver() {
+		if (liftSolverLease == null) {
+			liftSolverLease = SolverPool.getDefault().acquire();
+		}
+		return liftSolverLease.get();
+	}
+
+	private SolverStatus check(final Solver solver) {
+		solverCalls++;
+		return solver.check();
 	}
 
 	public boolean isTop(final PredState state) {
-		solver.push();
-		solver.add(PathUtils.unfold(Not(state.toExpr()), 0));
-		final boolean result = solver.check().isUnsat();
-		solver.pop();
+		if (state.isEmpty()) {
+			return true;
+		}
+
+		solver().push();
+		solver().add(PathUtils.unfold(Not(state.toExpr()), 0));
+		final boolean result = check(solver()).isUnsat();
+		solver().pop();
 		return result;
 	}
 
 	public boolean isBottom(final PredState state) {
-		solver.push();
-		solver.add(PathUtils.unfold(Not(state.toExpr()), 0));
-		final boolean result = solver.check().isUnsat();
-		solver.pop();
+		if (state.isEmpty()) {
+			return false;
+		} else if (state.hasContradictingLiterals()) {
+			return true;
+		}
+
+		final Boolean memoized = bottomMemo.get(state);
+		if (memoized != null) {
+			return memoized;
+		}
+
+		solver().push();
+		solver().add(PathUtils.unfold(state.toExpr(), 0));
+		final boolean result = check(solver()).isUnsat();
+		solver().pop();
+
+		bottomMemo.put(state, result);
 		return result;
 	}
 
+	/*
+	 * Decided syntactically where possible, then from earlier solver verdicts.
+	 * The complementary literal shortcut assumes state1 is not bottom, which
+	 * holds for every state built by getSuccStates.
+	 */
 	public boolean isLessOrEqual(final PredState state1, final PredState state2) {
-		solver.push();
-		solver.add(PathUtils.unfold(state1.toExpr(), 0));
-		solver.add(PathUtils.unfold(Not(state2.toExpr()), 0));
-		final boolean isLeq = solver.check().isUnsat();
-		solver.pop();
+		if (state1.hasAllLiteralsOf(state2)) {
+			return true;
+		} else if (state1.contradicts(state2)) {
+			return false;
+		}
+
+		final Entailment entailment = new Entailment(state1, state2);
+		final Boolean memoized = leqMemo.get(entailment);
+		if (memoized != null) {
+			return memoized;
+		}
+
+		final boolean isLeq = checkLessOrEqual(state1, state2);
+		leqMemo.put(entailment, isLeq);
+		return isLeq;
+	}
+
+	private boolean checkLessOrEqual(final PredState state1, final PredState state2) {
+		solver().push();
+		solver().add(PathUtils.unfold(state1.toExpr(), 0));
+		solver().add(PathUtils.unfold(Not(state2.toExpr()), 0));
+		final boolean isLeq = check(solver()).isUnsat();
+		solver().pop();
 		return isLeq;
 	}
 
-	public PredState lift(final Valuation valuation, final PredPrecision precision) {
+	public PredState lift(final Valuation valuation, final PredPrecision precision, final Loc loc) {
 		checkNotNull(valuation);
 		checkNotNull(precision);
+		checkNotNull(loc);
 		final Collection<Expr<BoolType>> statePreds = new LinkedList<>();
 
 		final Expr<BoolType> stateExpr = PathUtils.unfold(valuation.toExpr(), 0);
 
-		liftSolver.push();
-		liftSolver.add(stateExpr);
+		liftSolver().push();
+		liftSolver().add(stateExpr);
 
-		for (final Expr<BoolType> pred : precision.getPredicates()) {
+		for (final Expr<BoolType> pred : precision.getPredicates(loc)) {
 			final Expr<BoolType> predExpr = PathUtils.unfold(pred, 0);
 
-			liftSolver.push();
-			liftSolver.add(Not(predExpr));
-			if (liftSolver.check().isUnsat()) {
+			liftSolver().push();
+			liftSolver().add(Not(predExpr));
+			if (check(liftSolver()).isUnsat()) {
 				statePreds.add(pred);
 			} else {
-				liftSolver.pop();
-				liftSolver.push();
-				liftSolver.add(predExpr);
-				if (liftSolver.check().isUnsat()) {
+				liftSolver().pop();
+				liftSolver().push();
+				liftSolver().add(predExpr);
+				if (check(liftSolver()).isUnsat()) {
 					statePreds.add(Not(pred));
 				}
 			}
-			liftSolver.pop();
+			liftSolver().pop();
 		}
 
-		liftSolver.pop();
+		liftSolver().pop();
 
-		assert liftSolver.getAssertions().isEmpty();
+		assert liftSolver().getAssertions().isEmpty();
 
-		return PredState.of(statePreds);
+		return PredState.of(precision.getIndex(), statePreds);
 	}
 
 	public Collection<PredState> getSuccStates(final PredState state, final PredPrecision precision, final Edge edge) {
@@ -97,7 +231,11 @@ public final class PredDomain {
 		checkNotNull(precision);
 		checkNotNull(edge);
 
-		final Collection<PredState> succStates = new ArrayList<>();
+		final Set<Expr<BoolType>> predicates = precision.getPredicates(edge.getTarget());
+		final Collection<PredState> cachedSuccStates = postCache.get(state, edge, predicates);
+		if (cachedSuccStates != null) {
+			return cachedSuccStates;
+		}
 
 		final StmtUnfoldResult unfoldResult = StmtUtils.toExpr(edge.getStmt(), VarIndexing.all(0));
 		final Collection<? extends Expr<BoolType>> edgeExprs = unfoldResult.getExprs();
@@ -107,25 +245,172 @@ public final class PredDomain {
 		final Collection<Expr<BoolType>> transitionExprs = edgeExprs.stream().map(e -> PathUtils.unfold(e, 0))
 				.collect(toList());
 
-		solver.push();
+		solver().push();
+
+		solver().add(sourceExpr);
+		solver().add(transitionExprs);
+
+		final Collection<PredState> succStates;
+		switch (mode) {
+			case CARTESIAN:
+				succStates = getCartesianSuccStates(precision.getIndex(), predicates, indexing);
+				break;
+			case BOOLEAN:
+				succStates = getBooleanSuccStates(precision.getIndex(), predicates, indexing);
+				break;
+			case ENUMERATION:
+			default:
+				succStates = getEnumeratedSuccStates(precision, edge.getTarget(), indexing);
+				break;
+		}
+
+		solver().pop();
+
+		postCache.put(state, edge, predicates, succStates);
+		return succStates;
+	}
 
-		solver.add(sourceExpr);
-		solver.add(transitionExprs);
+	/* Lifts a model of the post-image at a time and blocks the lifted state */
+	private Collection<PredState> getEnumeratedSuccStates(final PredPrecision precision, final Loc target,
+			final VarIndexing indexing) {
+		final Collection<PredState> succStates = new ArrayList<>();
 
-		while (solver.check().isSat()) {
-			final Valuation model = solver.getModel();
+		while (check(solver()).isSat()) {
+			final Valuation model = solver().getModel();
 			final Valuation nextSuccStateVal = PathUtils.extractValuation(model, indexing);
 
-			final PredState nextSuccState = lift(nextSuccStateVal, precision);
+			final PredState nextSuccState = lift(nextSuccStateVal, precision, target);
 			succStates.add(nextSuccState);
 
 			final Expr<BoolType> targetExpr = PathUtils.unfold(nextSuccState.toExpr(), indexing);
-			solver.add(Not(targetExpr));
+			solver().add(Not(targetExpr));
 		}
 
-		solver.pop();
+		return succStates;
+	}
+
+	/* A single successor with the predicates (or negations) implied by the post-image */
+	private Collection<PredState> getCartesianSuccStates(final PredIndex index,
+			final Collection<Expr<BoolType>> predicates, final VarIndexing indexing) {
+		if (check(solver()).isUnsat()) {
+			return ImmutableList.of();
+		}
+
+		final Collection<Expr<BoolType>> statePreds = new ArrayList<>();
+
+		for (final Expr<BoolType> pred : predicates) {
+			final Expr<BoolType> predExpr = PathUtils.unfold(pred, indexing);
+
+			solver().push();
+			solver().add(Not(predExpr));
+			final boolean implied = check(solver()).isUnsat();
+			solver().pop();
+
+			if (implied) {
+				statePreds.add(pred);
+			} else {
+				solver().push();
+				solver().add(predExpr);
+				final boolean negationImplied = check(solver()).isUnsat();
+				solver().pop();
+
+				if (negationImplied) {
+					statePreds.add(Not(pred));
+				}
+			}
+		}
+
+		return ImmutableList.of(PredState.of(index, statePreds));
+	}
+
+	/*
+	 * Every satisfiable cube over the predicates: each predicate is bound to an
+	 * activation literal, and the cube of each model is blocked over the
+	 * activation literals only.
+	 */
+	private Collection<PredState> getBooleanSuccStates(final PredIndex index,
+			final Collection<Expr<BoolType>> predicates, final VarIndexing indexing) {
+		final List<Expr<BoolType>> preds = new ArrayList<>(predicates);
+		final List<ConstDecl<BoolType>> acts = getActivationLiterals(preds.size());
+
+		for (int i = 0; i < preds.size(); i++) {
+			solver().add(Iff(acts.get(i).getRef(), PathUtils.unfold(preds.get(i), indexing)));
+		}
+
+		final Collection<PredState> succStates = new ArrayList<>();
+
+		while (check(solver()).isSat()) {
+			final Valuation model = solver().getModel();
+			final Collection<Expr<BoolType>> statePreds = new ArrayList<>();
+			final Collection<Expr<BoolType>> actLits = new ArrayList<>();
+
+			for (int i = 0; i < preds.size(); i++) {
+				final Optional<LitExpr<BoolType>> value = model.eval(acts.get(i));
+				if (value.isPresent()) {
+					if (((BoolLitExpr) value.get()).getValue()) {
+						statePreds.add(preds.get(i));
+						actLits.add(acts.get(i).getRef());
+					} else {
+						statePreds.add(Not(preds.get(i)));
+						actLits.add(Not(acts.get(i).getRef()));
+					}
+				}
+			}
+
+			succStates.add(PredState.of(index, statePreds));
+
+			if (actLits.isEmpty()) {
+				break;
+			}
+			solver().add(Not(And(actLits)));
+		}
 
 		return succStates;
 	}
 
+	private List<ConstDecl<BoolType>> getActivationLiterals(final int count) {
+		while (activationLiterals.size() < count) {
+			activationLiterals.add(Const(ACT_PREFIX + activationLiterals.size(), Bool()));
+		}
+		return activationLiterals.subList(0, count);
+	}
+
+	private static final class Entailment {
+		private final PredState state1;
+		private final PredState state2;
+
+		private Entailment(final PredState state1, final PredState state2) {
+			this.state1 = checkNotNull(state1);
+			this.state2 = checkNotNull(state2);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * state1.hashCode() + state2.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (obj instanceof Entailment) {
+				final Entailment that = (Entailment) obj;
+				return this.state1.equals(that.state1) && this.state2.equals(that.state2);
+			} else {
+				return false;
+			}
+		}
+	}
+
+	public enum AbstractionMode {
+		/* Model enumeration, lifting each model separately */
+		ENUMERATION,
+
+		/* Each predicate is decided independently, a single successor */
+		CARTESIAN,
+
+		/* All-SAT over activation literals in one solver context */
+		BOOLEAN
+	}
+
 }
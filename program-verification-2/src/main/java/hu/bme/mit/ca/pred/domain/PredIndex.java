@@ -0,0 +1,85 @@
+package hu.bme.mit.ca.pred.domain;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import hu.bme.mit.theta.core.type.Expr;
+import hu.bme.mit.theta.core.type.booltype.BoolType;
+
+/*
+ * Numbers the predicates of the precisions of a single check, and interns the
+ * states built over them. The numbering is append-only, because precisions
+ * only grow during a check, and it is dropped together with the states when
+ * the check is over.
+ */
+public final class PredIndex {
+	private final Map<Expr<BoolType>, Integer> ids;
+	private final Interner<PredState> interner;
+	private volatile Expr<BoolType>[] preds;
+	private int size;
+
+	@SuppressWarnings("unchecked")
+	private PredIndex() {
+		ids = new ConcurrentHashMap<>();
+		interner = Interners.newWeakInterner();
+		preds = new Expr[64];
+		size = 0;
+	}
+
+	public static PredIndex create() {
+		return new PredIndex();
+	}
+
+	////
+
+	public int getId(final Expr<BoolType> pred) {
+		checkNotNull(pred);
+		final Integer id = ids.get(pred);
+		if (id != null) {
+			return id;
+		}
+
+		synchronized (this) {
+			final Integer existingId = ids.get(pred);
+			if (existingId != null) {
+				return existingId;
+			}
+
+			Expr<BoolType>[] array = preds;
+			if (size == array.length) {
+				array = Arrays.copyOf(array, size * 2);
+			}
+			array[size] = pred;
+			preds = array;
+			ids.put(pred, size);
+			return size++;
+		}
+	}
+
+	/* The id of the predicate if it is numbered already, a lookup does not number it */
+	public OptionalInt findId(final Expr<BoolType> pred) {
+		checkNotNull(pred);
+		final Integer id = ids.get(pred);
+		return id == null ? OptionalInt.empty() : OptionalInt.of(id);
+	}
+
+	/* Ids are only handed out after the array holding them is published */
+	public Expr<BoolType> get(final int id) {
+		final Expr<BoolType>[] array = preds;
+		checkElementIndex(id, array.length);
+		return checkNotNull(array[id]);
+	}
+
+	PredState intern(final PredState state) {
+		return interner.intern(state);
+	}
+
+}
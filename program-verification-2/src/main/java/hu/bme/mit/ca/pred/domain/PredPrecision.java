@@ -1,28 +1,50 @@
 package hu.bme.mit.ca.pred.domain;
 
+import static com.google.common.base.Preconditions.checkNotNull;
 import static hu.bme.mit.theta.core.utils.ExprUtils.ponate;
 import static java.util.Collections.emptySet;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
 
+import hu.bme.mit.theta.cfa.CFA.Loc;
 import hu.bme.mit.theta.common.Utils;
 import hu.bme.mit.theta.core.type.Expr;
 import hu.bme.mit.theta.core.type.booltype.BoolLitExpr;
 import hu.bme.mit.theta.core.type.booltype.BoolType;
 
+/*
+ * Predicates tracked at every location, and predicates tracked only at
+ * given locations. A new precision has its own index for the states built
+ * with it, and a join keeps the index of the precision joined to, so the
+ * precisions of a check share one.
+ */
 public final class PredPrecision {
-	private static final PredPrecision EMTPY = PredPrecision.of(emptySet());
+	private final PredIndex index;
+	private final Set<Expr<BoolType>> predicates;
+	private final SetMultimap<Loc, Expr<BoolType>> localPredicates;
 
-	private final Collection<Expr<BoolType>> predicates;
+	public PredPrecision(final Collection<? extends Expr<BoolType>> predicates,
+			final Multimap<Loc, ? extends Expr<BoolType>> localPredicates) {
+		this(PredIndex.create(), predicates, localPredicates);
+	}
 
-	public PredPrecision(final Collection<? extends Expr<BoolType>> predicates) {
+	private PredPrecision(final PredIndex index, final Collection<? extends Expr<BoolType>> predicates,
+			final Multimap<Loc, ? extends Expr<BoolType>> localPredicates) {
+		this.index = checkNotNull(index);
 		this.predicates = collectPredicatesFrom(predicates);
+		this.localPredicates = collectPredicatesFrom(localPredicates);
 	}
 
-	private static Collection<Expr<BoolType>> collectPredicatesFrom(
+	private static Set<Expr<BoolType>> collectPredicatesFrom(
 			final Collection<? extends Expr<BoolType>> predicates) {
 		final ImmutableSet.Builder<Expr<BoolType>> builder = ImmutableSet.builder();
 		for (final Expr<BoolType> predicate : predicates) {
@@ -33,32 +55,72 @@ public final class PredPrecision {
 		return builder.build();
 	}
 
+	private static SetMultimap<Loc, Expr<BoolType>> collectPredicatesFrom(
+			final Multimap<Loc, ? extends Expr<BoolType>> localPredicates) {
+		final ImmutableSetMultimap.Builder<Loc, Expr<BoolType>> builder = ImmutableSetMultimap.builder();
+		for (final Map.Entry<Loc, ? extends Expr<BoolType>> entry : localPredicates.entries()) {
+			if (!(entry.getValue() instanceof BoolLitExpr)) {
+				builder.put(entry.getKey(), ponate(entry.getValue()));
+			}
+		}
+		return builder.build();
+	}
+
 	public static PredPrecision of(final Collection<? extends Expr<BoolType>> predicates) {
-		return new PredPrecision(predicates);
+		return new PredPrecision(predicates, ImmutableSetMultimap.of());
+	}
+
+	public static PredPrecision of(final Multimap<Loc, ? extends Expr<BoolType>> localPredicates) {
+		return new PredPrecision(emptySet(), localPredicates);
 	}
 
 	public static PredPrecision empty() {
-		return EMTPY;
+		return of(emptySet());
 	}
 
 	////
 
+	public PredIndex getIndex() {
+		return index;
+	}
+
+	/* Every predicate of the precision, regardless of location */
 	public Collection<Expr<BoolType>> getPredicates() {
+		final Collection<Expr<BoolType>> result = new HashSet<>(predicates);
+		result.addAll(localPredicates.values());
+		return result;
+	}
+
+	/* Predicates to track at the given location */
+	public Set<Expr<BoolType>> getPredicates(final Loc loc) {
+		checkNotNull(loc);
+		return Sets.union(predicates, localPredicates.get(loc));
+	}
+
+	/* Predicates tracked at every location */
+	Set<Expr<BoolType>> getGlobalPredicates() {
 		return predicates;
 	}
 
+	SetMultimap<Loc, Expr<BoolType>> getLocalPredicates() {
+		return localPredicates;
+	}
+
 	public PredPrecision join(final PredPrecision that) {
 		final Collection<Expr<BoolType>> predicates = new HashSet<>();
 		predicates.addAll(this.predicates);
 		predicates.addAll(that.predicates);
-		return PredPrecision.of(predicates);
+		final SetMultimap<Loc, Expr<BoolType>> localPredicates = ImmutableSetMultimap.<Loc, Expr<BoolType>>builder()
+				.putAll(this.localPredicates).putAll(that.localPredicates).build();
+		return new PredPrecision(index, predicates, localPredicates);
 	}
 
 	////
 
 	@Override
 	public String toString() {
-		return Utils.lispStringBuilder(getClass().getSimpleName()).aligned().addAll(predicates).toString();
+		return Utils.lispStringBuilder(getClass().getSimpleName()).aligned().addAll(predicates)
+				.addAll(localPredicates.entries()).toString();
 	}
 
 }
@@ -0,0 +1,352 @@
+package hu.bme.mit.ca.pred.domain;
+
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.False;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.Iff;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.Not;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.True;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Add;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Eq;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Int;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Leq;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Mul;
+import static hu.bme.mit.theta.core.utils.ExprUtils.getVars;
+import static hu.bme.mit.theta.core.utils.ExprUtils.ponate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
+
+import hu.bme.mit.ca.common.SolverPool;
+import hu.bme.mit.theta.cfa.CFA.Loc;
+import hu.bme.mit.theta.core.decl.Decl;
+import hu.bme.mit.theta.core.type.Expr;
+import hu.bme.mit.theta.core.type.anytype.RefExpr;
+import hu.bme.mit.theta.core.type.booltype.BoolLitExpr;
+import hu.bme.mit.theta.core.type.booltype.BoolType;
+import hu.bme.mit.theta.core.type.inttype.IntAddExpr;
+import hu.bme.mit.theta.core.type.inttype.IntEqExpr;
+import hu.bme.mit.theta.core.type.inttype.IntGeqExpr;
+import hu.bme.mit.theta.core.type.inttype.IntGtExpr;
+import hu.bme.mit.theta.core.type.inttype.IntLeqExpr;
+import hu.bme.mit.theta.core.type.inttype.IntLitExpr;
+import hu.bme.mit.theta.core.type.inttype.IntLtExpr;
+import hu.bme.mit.theta.core.type.inttype.IntMulExpr;
+import hu.bme.mit.theta.core.type.inttype.IntNegExpr;
+import hu.bme.mit.theta.core.type.inttype.IntNeqExpr;
+import hu.bme.mit.theta.core.type.inttype.IntSubExpr;
+import hu.bme.mit.theta.core.type.inttype.IntType;
+import hu.bme.mit.theta.core.utils.PathUtils;
+import hu.bme.mit.theta.solver.Solver;
+
+/*
+ * Simplifies new predicates before they are joined to a precision. Linear
+ * integer atoms are brought to a canonical form, so that for example x < 5
+ * and x <= 4, or x + y and y + x, give the same predicate. Constant
+ * predicates are dropped, as are predicates equivalent to a predicate or its
+ * negation tracked at the same location. Both polarities of a predicate are
+ * tracked, so a predicate may be replaced by its negation.
+ */
+public final class PredSimplifier {
+
+	private SolverPool.Lease<Solver> solverLease;
+	private long eliminated;
+	private long solverCalls;
+
+	private PredSimplifier() {
+		solverLease = null;
+		eliminated = 0;
+		solverCalls = 0;
+	}
+
+	public static PredSimplifier create() {
+		return new PredSimplifier();
+	}
+
+	/* Number of new predicates that did not enter a precision, over every join */
+	public long getEliminated() {
+		return eliminated;
+	}
+
+	/* Equivalence checks between predicates, over every join */
+	public long getSolverCalls() {
+		return solverCalls;
+	}
+
+	/* Returns the solver to the pool, it is leased again on the next use */
+	public void release() {
+		if (solverLease != null) {
+			solverLease.close();
+			solverLease = null;
+		}
+	}
+
+	////
+
+	/* The predicates of that are simplified before they are joined to the precision */
+	public PredPrecision join(final PredPrecision precision, final PredPrecision that) {
+		final Set<Expr<BoolType>> predicates = new HashSet<>();
+		for (final Expr<BoolType> pred : that.getGlobalPredicates()) {
+			addIfNew(pred, precision.getGlobalPredicates(), predicates);
+		}
+
+		final SetMultimap<Loc, Expr<BoolType>> localPredicates = LinkedHashMultimap.create();
+		for (final Map.Entry<Loc, Expr<BoolType>> entry : that.getLocalPredicates().entries()) {
+			final Loc loc = entry.getKey();
+			addIfNew(entry.getValue(), precision.getPredicates(loc), localPredicates.get(loc));
+		}
+
+		return precision.join(new PredPrecision(predicates, localPredicates));
+	}
+
+	/* Predicates that are already tracked as they are do not count as eliminated */
+	private void addIfNew(final Expr<BoolType> newPred, final Set<Expr<BoolType>> tracked,
+			final Set<Expr<BoolType>> added) {
+		if (tracked.contains(ponate(newPred))) {
+			return;
+		}
+
+		final Expr<BoolType> pred = canonize(newPred);
+		if (pred instanceof BoolLitExpr || tracked.contains(pred) || added.contains(pred)
+				|| isRedundant(pred, tracked) || isRedundant(pred, added)) {
+			eliminated++;
+		} else {
+			added.add(pred);
+		}
+	}
+
+	/* Canonical linear atoms over the same variables are equal if equivalent, so only others reach the solver */
+	private boolean isRedundant(final Expr<BoolType> pred, final Collection<Expr<BoolType>> tracked) {
+		final Set<?> vars = getVars(pred);
+		for (final Expr<BoolType> trackedPred : tracked) {
+			if (getVars(trackedPred).equals(vars) && (isValid(Iff(pred, trackedPred))
+					|| isValid(Iff(pred, Not(trackedPred))))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Solver solver() {
+		if (solverLease == null) {
+			solverLease = SolverPool.getDefault().acquire();
+		}
+		return solverLease.get();
+	}
+
+	private boolean isValid(final Expr<BoolType> expr) {
+		solver().push();
+		solver().add(PathUtils.unfold(Not(expr), 0));
+		solverCalls++;
+		final boolean valid = solver().check().isUnsat();
+		solver().pop();
+		return valid;
+	}
+
+	////
+
+	/*
+	 * Linear integer atoms are rewritten to a1*x1 + ... + an*xn <= c or to
+	 * a1*x1 + ... + an*xn = c, with the variables ordered by name, the
+	 * coefficients divided by their greatest common divisor and a1 positive.
+	 * Other atoms are only ponated. Atoms without variables become literals.
+	 */
+	public static Expr<BoolType> canonize(final Expr<BoolType> atom) {
+		final Expr<BoolType> pred = ponate(atom);
+		try {
+			if (pred instanceof IntLeqExpr) {
+				final IntLeqExpr leq = (IntLeqExpr) pred;
+				return toLeq(LinearForm.of(leq.getLeftOp(), leq.getRightOp()));
+			} else if (pred instanceof IntLtExpr) {
+				final IntLtExpr lt = (IntLtExpr) pred;
+				return toLeq(LinearForm.of(lt.getLeftOp(), lt.getRightOp()).plus(1));
+			} else if (pred instanceof IntGeqExpr) {
+				final IntGeqExpr geq = (IntGeqExpr) pred;
+				return toLeq(LinearForm.of(geq.getRightOp(), geq.getLeftOp()));
+			} else if (pred instanceof IntGtExpr) {
+				final IntGtExpr gt = (IntGtExpr) pred;
+				return toLeq(LinearForm.of(gt.getRightOp(), gt.getLeftOp()).plus(1));
+			} else if (pred instanceof IntEqExpr) {
+				final IntEqExpr eq = (IntEqExpr) pred;
+				return toEq(LinearForm.of(eq.getLeftOp(), eq.getRightOp()));
+			} else if (pred instanceof IntNeqExpr) {
+				final IntNeqExpr neq = (IntNeqExpr) pred;
+				return toEq(LinearForm.of(neq.getLeftOp(), neq.getRightOp()));
+			} else {
+				return pred;
+			}
+		} catch (final NonLinearException | ArithmeticException e) {
+			return pred;
+		}
+	}
+
+	/* form <= 0, or its negation -form + 1 <= 0 if the first coefficient is negative */
+	private static Expr<BoolType> toLeq(final LinearForm form) {
+		if (form.isConstant()) {
+			return form.constant <= 0 ? True() : False();
+		}
+
+		final long gcd = form.gcd();
+		LinearForm result = form.divide(gcd, Math.floorDiv(Math.negateExact(form.constant), gcd));
+		if (result.getFirstCoefficient() < 0) {
+			result = result.negate().plus(1);
+		}
+		return Leq(result.getTerms(), Int(toInt(Math.negateExact(result.constant))));
+	}
+
+	/* form = 0, with the first coefficient positive */
+	private static Expr<BoolType> toEq(final LinearForm form) {
+		if (form.isConstant()) {
+			return form.constant == 0 ? True() : False();
+		}
+
+		final long gcd = form.gcd();
+		if (form.constant % gcd != 0) {
+			return False();
+		}
+		LinearForm result = form.divide(gcd, Math.negateExact(form.constant) / gcd);
+		if (result.getFirstCoefficient() < 0) {
+			result = result.negate();
+		}
+		return Eq(result.getTerms(), Int(toInt(Math.negateExact(result.constant))));
+	}
+
+	private static int toInt(final long value) {
+		return Math.toIntExact(value);
+	}
+
+	private static final class NonLinearException extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/* The sum of coefficient * variable terms and a constant, with variables ordered by name */
+	private static final class LinearForm {
+		private final Map<Decl<IntType>, Long> coefficients;
+		private long constant;
+
+		private LinearForm() {
+			coefficients = new LinkedHashMap<>();
+			constant = 0;
+		}
+
+		/* left - right */
+		private static LinearForm of(final Expr<IntType> left, final Expr<IntType> right)
+				throws NonLinearException {
+			final LinearForm form = new LinearForm();
+			form.add(left, 1);
+			form.add(right, -1);
+			form.coefficients.values().removeIf(c -> c == 0);
+			return form;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void add(final Expr<IntType> expr, final long factor) throws NonLinearException {
+			if (expr instanceof IntLitExpr) {
+				constant = Math.addExact(constant, Math.multiplyExact(factor, ((IntLitExpr) expr).getValue()));
+			} else if (expr instanceof RefExpr) {
+				final Decl<IntType> decl = ((RefExpr<IntType>) expr).getDecl();
+				coefficients.put(decl, Math.addExact(coefficients.getOrDefault(decl, 0L), factor));
+			} else if (expr instanceof IntAddExpr) {
+				for (final Expr<IntType> op : ((IntAddExpr) expr).getOps()) {
+					add(op, factor);
+				}
+			} else if (expr instanceof IntSubExpr) {
+				add(((IntSubExpr) expr).getLeftOp(), factor);
+				add(((IntSubExpr) expr).getRightOp(), Math.negateExact(factor));
+			} else if (expr instanceof IntNegExpr) {
+				add(((IntNegExpr) expr).getOp(), Math.negateExact(factor));
+			} else if (expr instanceof IntMulExpr) {
+				long product = factor;
+				Expr<IntType> nonConstant = null;
+				for (final Expr<IntType> op : ((IntMulExpr) expr).getOps()) {
+					if (op instanceof IntLitExpr) {
+						product = Math.multiplyExact(product, ((IntLitExpr) op).getValue());
+					} else if (nonConstant == null) {
+						nonConstant = op;
+					} else {
+						throw new NonLinearException();
+					}
+				}
+				if (nonConstant == null) {
+					constant = Math.addExact(constant, product);
+				} else {
+					add(nonConstant, product);
+				}
+			} else {
+				throw new NonLinearException();
+			}
+		}
+
+		private boolean isConstant() {
+			return coefficients.isEmpty();
+		}
+
+		private long gcd() {
+			long gcd = 0;
+			for (final long coefficient : coefficients.values()) {
+				long a = Math.abs(coefficient);
+				long b = gcd;
+				while (b != 0) {
+					final long r = a % b;
+					a = b;
+					b = r;
+				}
+				gcd = a;
+			}
+			return gcd;
+		}
+
+		private LinearForm plus(final long value) {
+			constant = Math.addExact(constant, value);
+			return this;
+		}
+
+		private LinearForm negate() {
+			final LinearForm result = new LinearForm();
+			coefficients.forEach((decl, c) -> result.coefficients.put(decl, Math.negateExact(c)));
+			result.constant = Math.negateExact(constant);
+			return result;
+		}
+
+		/* Coefficients divided by the divisor, and the given right-hand side */
+		private LinearForm divide(final long divisor, final long rightHandSide) {
+			final LinearForm result = new LinearForm();
+			coefficients.forEach((decl, c) -> result.coefficients.put(decl, c / divisor));
+			result.constant = Math.negateExact(rightHandSide);
+			return result;
+		}
+
+		private List<Map.Entry<Decl<IntType>, Long>> getSortedEntries() {
+			final List<Map.Entry<Decl<IntType>, Long>> entries = new ArrayList<>(coefficients.entrySet());
+			entries.sort(Comparator.comparing(e -> e.getKey().getName()));
+			return entries;
+		}
+
+		private long getFirstCoefficient() {
+			return getSortedEntries().get(0).getValue();
+		}
+
+		private Expr<IntType> getTerms() {
+			final ImmutableList.Builder<Expr<IntType>> terms = ImmutableList.builder();
+			for (final Map.Entry<Decl<IntType>, Long> entry : getSortedEntries()) {
+				final Expr<IntType> ref = entry.getKey().getRef();
+				if (entry.getValue() == 1) {
+					terms.add(ref);
+				} else {
+					terms.add(Mul(ImmutableList.of(Int(toInt(entry.getValue())), ref)));
+				}
+			}
+			final List<Expr<IntType>> termList = terms.build();
+			return termList.size() == 1 ? termList.get(0) : Add(termList);
+		}
+	}
+
+}
@@ -3,43 +3,66 @@ package hu.bme.mit.ca.pred.domain;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static hu.bme.mit.theta.common.Utils.singleElementOf;
 import static hu.bme.mit.theta.core.type.booltype.BoolExprs.And;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.False;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.Not;
 import static hu.bme.mit.theta.core.type.booltype.BoolExprs.True;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.OptionalInt;
 
 import com.google.common.collect.ImmutableSet;
 
 import hu.bme.mit.theta.common.Utils;
 import hu.bme.mit.theta.core.type.Expr;
 import hu.bme.mit.theta.core.type.booltype.BoolType;
-
+import hu.bme.mit.theta.core.type.booltype.NotExpr;
+
+/*
+ * A conjunction of literals, stored as two bit vectors over a PredIndex: one
+ * for the predicates and one for the negated predicates. States are
+ * interned by their index: equal literal sets share a single instance, so
+ * equal states are identical and compared by reference. Only states of the
+ * same index are compared, the top state belongs to every index.
+ */
 public final class PredState {
 	private static final int HASH_SEED = 7621;
-	private static final PredState TOP = PredState.of(ImmutableSet.of());
+	private static final long[] NO_BITS = new long[0];
+	private static final PredState TOP = new PredState(null, NO_BITS, NO_BITS);
 
-	private final Collection<Expr<BoolType>> predicates;
+	private final PredIndex index;
+	private final long[] positive;
+	private final long[] negative;
+	private final int hashCode;
 
 	private volatile Expr<BoolType> expr;
-	private volatile int hashCode = 0;
 
-	private PredState(final Collection<? extends Expr<BoolType>> predicates) {
-		checkNotNull(predicates);
-		this.predicates = ImmutableSet.copyOf(predicates);
-		expr = convertToExpr(predicates);
+	private PredState(final PredIndex index, final long[] positive, final long[] negative) {
+		this.index = index;
+		this.positive = positive;
+		this.negative = negative;
+		hashCode = 31 * (31 * HASH_SEED + Arrays.hashCode(positive)) + Arrays.hashCode(negative);
+		expr = null;
 	}
 
-	private static Expr<BoolType> convertToExpr(final Collection<? extends Expr<BoolType>> predicates) {
-		if (predicates.size() == 0) {
-			return True();
-		} else if (predicates.size() == 1) {
-			return singleElementOf(predicates);
-		} else {
-			return And(predicates);
+	public static PredState of(final PredIndex index, final Collection<? extends Expr<BoolType>> predicates) {
+		checkNotNull(index);
+		checkNotNull(predicates);
+		if (predicates.isEmpty()) {
+			return TOP;
 		}
-	}
 
-	public static PredState of(final Collection<? extends Expr<BoolType>> predicates) {
-		return new PredState(predicates);
+		final BitSet positive = new BitSet();
+		final BitSet negative = new BitSet();
+		for (final Expr<BoolType> pred : predicates) {
+			if (pred instanceof NotExpr) {
+				negative.set(index.getId(((NotExpr) pred).getOp()));
+			} else {
+				positive.set(index.getId(pred));
+			}
+		}
+		return index.intern(new PredState(index, toWords(positive), toWords(negative)));
 	}
 
 	public static PredState top() {
@@ -49,12 +72,55 @@ public final class PredState {
 	////
 
 	public Collection<Expr<BoolType>> getPredicates() {
-		return predicates;
+		final ImmutableSet.Builder<Expr<BoolType>> builder = ImmutableSet.builder();
+		for (int id = nextBit(positive, 0); id >= 0; id = nextBit(positive, id + 1)) {
+			builder.add(index.get(id));
+		}
+		for (int id = nextBit(negative, 0); id >= 0; id = nextBit(negative, id + 1)) {
+			builder.add(Not(index.get(id)));
+		}
+		return builder.build();
+	}
+
+	public boolean isEmpty() {
+		return positive.length == 0 && negative.length == 0;
+	}
+
+	/* Every literal of that state is a literal of this state, so this is less or equal */
+	public boolean hasAllLiteralsOf(final PredState that) {
+		return isSubset(that.positive, this.positive) && isSubset(that.negative, this.negative);
+	}
+
+	/* A literal of one of the states is negated in the other */
+	public boolean contradicts(final PredState that) {
+		return intersects(this.positive, that.negative) || intersects(this.negative, that.positive);
+	}
+
+	/* False, or a predicate together with its negation */
+	public boolean hasContradictingLiterals() {
+		if (isEmpty()) {
+			return false;
+		}
+		final OptionalInt falseId = index.findId(False());
+		return contradicts(this) || (falseId.isPresent() && getBit(positive, falseId.getAsInt()));
+	}
+
+	/* The predicates decided by this state, regardless of polarity */
+	public BitSet getSignature() {
+		final BitSet signature = BitSet.valueOf(positive);
+		signature.or(BitSet.valueOf(negative));
+		return signature;
+	}
+
+	/* The predicates of the positive literals, with the signature it determines the state */
+	public BitSet getPositivePredicates() {
+		return BitSet.valueOf(positive);
 	}
 
 	public Expr<BoolType> toExpr() {
 		Expr<BoolType> result = expr;
-		if (expr == null) {
+		if (result == null) {
+			final Collection<Expr<BoolType>> predicates = getPredicates();
 			if (predicates.size() == 0) {
 				result = True();
 			} else if (predicates.size() == 1) {
@@ -64,29 +130,74 @@ public final class PredState {
 			}
 			expr = result;
 		}
-		return expr;
+		return result;
+	}
+
+	////
+
+	private static long[] toWords(final BitSet bits) {
+		return bits.isEmpty() ? NO_BITS : bits.toLongArray();
+	}
+
+	private static boolean isSubset(final long[] bits1, final long[] bits2) {
+		for (int i = 0; i < bits1.length; i++) {
+			final long word2 = i < bits2.length ? bits2[i] : 0;
+			if ((bits1[i] & ~word2) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean intersects(final long[] bits1, final long[] bits2) {
+		final int length = Math.min(bits1.length, bits2.length);
+		for (int i = 0; i < length; i++) {
+			if ((bits1[i] & bits2[i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean getBit(final long[] bits, final int id) {
+		final int word = id >>> 6;
+		return word < bits.length && (bits[word] & (1L << id)) != 0;
+	}
+
+	private static int nextBit(final long[] bits, final int from) {
+		int word = from >>> 6;
+		if (word >= bits.length) {
+			return -1;
+		}
+		long remaining = bits[word] & (-1L << from);
+		while (true) {
+			if (remaining != 0) {
+				return word * 64 + Long.numberOfTrailingZeros(remaining);
+			}
+			word++;
+			if (word == bits.length) {
+				return -1;
+			}
+			remaining = bits[word];
+		}
 	}
 
 	////
 
 	@Override
 	public int hashCode() {
-		int result = hashCode;
-		if (result == 0) {
-			result = HASH_SEED;
-			result = 31 * result + predicates.hashCode();
-			hashCode = result;
-		}
-		return result;
+		return hashCode;
 	}
 
+	/* Structural, as the intern table needs it, but equal interned states stop at the first branch */
 	@Override
 	public boolean equals(final Object obj) {
 		if (this == obj) {
 			return true;
 		} else if (obj instanceof PredState) {
 			final PredState that = (PredState) obj;
-			return this.predicates.equals(that.predicates);
+			return this.hashCode == that.hashCode && this.index == that.index && Arrays.equals(this.positive, that.positive)
+					&& Arrays.equals(this.negative, that.negative);
 		} else {
 			return false;
 		}
@@ -94,7 +205,7 @@ public final class PredState {
 
 	@Override
 	public String toString() {
-		return Utils.lispStringBuilder(getClass().getSimpleName()).aligned().addAll(predicates).toString();
+		return Utils.lispStringBuilder(getClass().getSimpleName()).aligned().addAll(getPredicates()).toString();
 	}
 
 }
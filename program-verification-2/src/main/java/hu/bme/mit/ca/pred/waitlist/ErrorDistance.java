@@ -0,0 +1,50 @@
+package hu.bme.mit.ca.pred.waitlist;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+import hu.bme.mit.theta.cfa.CFA;
+
+/*
+ * Number of CFA edges from each location to the error location, computed
+ * once by a backward breadth-first search. Locations that cannot reach the
+ * error location are at distance Integer.MAX_VALUE.
+ */
+public final class ErrorDistance {
+
+	private final Map<CFA.Loc, Integer> distances;
+
+	private ErrorDistance(final CFA cfa) {
+		checkNotNull(cfa);
+		distances = new HashMap<>();
+
+		final Queue<CFA.Loc> queue = new ArrayDeque<>();
+		distances.put(cfa.getErrorLoc(), 0);
+		queue.add(cfa.getErrorLoc());
+
+		while (!queue.isEmpty()) {
+			final CFA.Loc loc = queue.remove();
+			final int distance = distances.get(loc);
+			for (final CFA.Edge inEdge : loc.getInEdges()) {
+				final CFA.Loc source = inEdge.getSource();
+				if (!distances.containsKey(source)) {
+					distances.put(source, distance + 1);
+					queue.add(source);
+				}
+			}
+		}
+	}
+
+	public static ErrorDistance of(final CFA cfa) {
+		return new ErrorDistance(cfa);
+	}
+
+	public int get(final CFA.Loc loc) {
+		return distances.getOrDefault(loc, Integer.MAX_VALUE);
+	}
+
+}
@@ -32,4 +32,9 @@ public final class FifoWaitlist implements Waitlist {
 		return nodes.size();
 	}
 
+	@Override
+	public void clear() {
+		nodes.clear();
+	}
+
 }
@@ -19,7 +19,7 @@ public final class LifoWaitlist implements Waitlist {
 
 	@Override
 	public void add(final ArgNode node) {
-		nodes.add(node);
+		nodes.push(node);
 	}
 
 	@Override
@@ -32,4 +32,9 @@ public final class LifoWaitlist implements Waitlist {
 		return nodes.size();
 	}
 
+	@Override
+	public void clear() {
+		nodes.clear();
+	}
+
 }
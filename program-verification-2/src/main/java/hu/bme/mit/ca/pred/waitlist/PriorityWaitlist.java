@@ -0,0 +1,66 @@
+package hu.bme.mit.ca.pred.waitlist;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.function.ToIntFunction;
+
+import hu.bme.mit.ca.pred.arg.ArgNode;
+
+/*
+ * Removes the node with the smallest priority first. The priority of a node
+ * is computed once, when it is added, and nodes of equal priority are
+ * removed in the order they were added.
+ */
+public final class PriorityWaitlist implements Waitlist {
+
+	private final ToIntFunction<? super ArgNode> priority;
+	private final Queue<Entry> entries;
+	private long sequence;
+
+	private PriorityWaitlist(final ToIntFunction<? super ArgNode> priority) {
+		this.priority = checkNotNull(priority);
+		entries = new PriorityQueue<>(
+				Comparator.<Entry>comparingInt(e -> e.priority).thenComparingLong(e -> e.sequence));
+		sequence = 0;
+	}
+
+	public static PriorityWaitlist create(final ToIntFunction<? super ArgNode> priority) {
+		return new PriorityWaitlist(priority);
+	}
+
+	@Override
+	public void add(final ArgNode node) {
+		entries.add(new Entry(node, priority.applyAsInt(node), sequence++));
+	}
+
+	@Override
+	public ArgNode remove() {
+		return entries.remove().node;
+	}
+
+	@Override
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public void clear() {
+		entries.clear();
+	}
+
+	private static final class Entry {
+		private final ArgNode node;
+		private final int priority;
+		private final long sequence;
+
+		private Entry(final ArgNode node, final int priority, final long sequence) {
+			this.node = checkNotNull(node);
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+	}
+
+}
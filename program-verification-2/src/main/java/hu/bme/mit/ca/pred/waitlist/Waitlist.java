@@ -10,6 +10,8 @@ public interface Waitlist {
 
 	int size();
 
+	void clear();
+
 	default void addAll(final Iterable<? extends ArgNode> nodes) {
 		nodes.forEach(this::add);
 	}
@@ -0,0 +1,77 @@
+package hu.bme.mit.ca.pred.waitlist;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import hu.bme.mit.ca.pred.arg.ArgNode;
+
+/*
+ * A waitlist per worker, each in the order of the search strategy. Workers
+ * add the nodes they create to their own waitlist, and when it is empty they
+ * steal from the others, starting with the next worker.
+ */
+public final class WorkStealingWaitlist {
+
+	private final List<Waitlist> waitlists;
+
+	private WorkStealingWaitlist(final Supplier<? extends Waitlist> factory, final int workers) {
+		checkNotNull(factory);
+		checkArgument(workers >= 1);
+		waitlists = new ArrayList<>(workers);
+		for (int i = 0; i < workers; i++) {
+			waitlists.add(checkNotNull(factory.get()));
+		}
+	}
+
+	public static WorkStealingWaitlist create(final Supplier<? extends Waitlist> factory, final int workers) {
+		return new WorkStealingWaitlist(factory, workers);
+	}
+
+	public int getWorkers() {
+		return waitlists.size();
+	}
+
+	public void add(final int worker, final ArgNode node) {
+		final Waitlist waitlist = waitlists.get(worker);
+		synchronized (waitlist) {
+			waitlist.add(node);
+		}
+	}
+
+	/* Null if every waitlist is empty */
+	public ArgNode poll(final int worker) {
+		for (int i = 0; i < waitlists.size(); i++) {
+			final Waitlist waitlist = waitlists.get((worker + i) % waitlists.size());
+			synchronized (waitlist) {
+				if (!waitlist.isEmpty()) {
+					return waitlist.remove();
+				}
+			}
+		}
+		return null;
+	}
+
+	public boolean isEmpty() {
+		for (final Waitlist waitlist : waitlists) {
+			synchronized (waitlist) {
+				if (!waitlist.isEmpty()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	public void clear() {
+		for (final Waitlist waitlist : waitlists) {
+			synchronized (waitlist) {
+				waitlist.clear();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package hu.bme.mit.ca.pred;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import hu.bme.mit.ca.pred.CegarChecker.SearchStrategy;
+import hu.bme.mit.ca.pred.arg.ArgNode;
+import hu.bme.mit.ca.pred.domain.PredDomain.AbstractionMode;
+import hu.bme.mit.theta.cfa.CFA;
+import hu.bme.mit.theta.cfa.dsl.CfaDslManager;
+
+@RunWith(value = Parameterized.class)
+public final class CegarCheckerStrategyTest {
+
+	@Parameter(value = 0)
+	public String filepath;
+
+	@Parameter(value = 1)
+	public boolean safe;
+
+	@Parameter(value = 2)
+	public SearchStrategy strategy;
+
+	@Parameter(value = 3)
+	public AbstractionMode mode;
+
+	@Parameters(name = "{index}: {0}, {1}, {2}, {3}")
+	public static Collection<Object[]> data() {
+		final Collection<Object[]> models = Arrays.asList(new Object[][] {
+
+				{ "src/test/resources/ca-ex_false.cfa", false },
+
+				{ "src/test/resources/counter5_false.cfa", false },
+
+				{ "src/test/resources/counter5_true.cfa", true },
+
+				{ "src/test/resources/gcd_true.cfa", true },
+
+				{ "src/test/resources/locking_true.cfa", true },
+
+		});
+
+		final Collection<Object[]> data = new ArrayList<>();
+		for (final Object[] model : models) {
+			for (final SearchStrategy strategy : SearchStrategy.values()) {
+				for (final AbstractionMode mode : AbstractionMode.values()) {
+					data.add(new Object[] { model[0], model[1], strategy, mode });
+				}
+			}
+		}
+		return data;
+	}
+
+	@Test
+	public void test() throws IOException {
+		final InputStream inputStream = new FileInputStream(filepath);
+		final CFA cfa = CfaDslManager.createCfa(inputStream);
+		final CegarChecker checker = CegarChecker.builder(cfa, strategy).timeout(60).abstractionMode(mode).build();
+
+		assertResult(cfa, checker.check());
+	}
+
+	@Test
+	public void testParallel() throws IOException {
+		final InputStream inputStream = new FileInputStream(filepath);
+		final CFA cfa = CfaDslManager.createCfa(inputStream);
+		final CegarChecker sequential = CegarChecker.builder(cfa, strategy).timeout(60).abstractionMode(mode).build();
+		final CegarChecker parallel = CegarChecker.builder(cfa, strategy).timeout(60).abstractionMode(mode).threads(4)
+				.build();
+
+		final SafetyResult result = parallel.check();
+		assertResult(cfa, result);
+		assertEquals(sequential.check().isSafe(), result.isSafe());
+
+		/* The worker threads are stopped after a check and started again by the next one */
+		assertEquals(result.isSafe(), parallel.check().isSafe());
+	}
+
+	@Test
+	public void testBatchRefinement() throws IOException {
+		final InputStream inputStream = new FileInputStream(filepath);
+		final CFA cfa = CfaDslManager.createCfa(inputStream);
+		final CegarChecker checker = CegarChecker.builder(cfa, strategy).timeout(60).abstractionMode(mode)
+				.maxCounterexamples(5).build();
+
+		assertResult(cfa, checker.check());
+	}
+
+	@Test
+	public void testPostCache() throws IOException {
+		final InputStream inputStream = new FileInputStream(filepath);
+		final CFA cfa = CfaDslManager.createCfa(inputStream);
+		final CegarChecker cached = CegarChecker.builder(cfa, strategy).timeout(60).abstractionMode(mode).build();
+		final CegarChecker uncached = CegarChecker.builder(cfa, strategy).timeout(60).abstractionMode(mode)
+				.cacheSize(0).build();
+
+		assertEquals(uncached.check().isSafe(), cached.check().isSafe());
+		assertEquals(0, uncached.getPostCache().getHits());
+		assertTrue(cached.getPostCache().getHits() + cached.getPostCache().getMisses() > 0);
+
+		/* The states of a check are built over its own index, so they are dropped after it */
+		assertEquals(0, cached.getPostCache().getSize());
+	}
+
+	@Test
+	public void testCancelled() throws IOException {
+		final InputStream inputStream = new FileInputStream(filepath);
+		final CFA cfa = CfaDslManager.createCfa(inputStream);
+		final CegarChecker checker = CegarChecker.create(cfa, strategy);
+
+		checker.cancel();
+
+		assertTrue(checker.check().isTimeout());
+	}
+
+	private void assertResult(final CFA cfa, final SafetyResult result) {
+		if (safe) {
+			assertTrue(result.isSafe());
+
+			/* The pruned and rebuilt graph must still be complete */
+			final List<ArgNode> nodes = result.asSafe().getRootNode().getDescendants().collect(toList());
+			for (final ArgNode node : nodes) {
+				assertTrue(!node.getLoc().equals(cfa.getErrorLoc()));
+				assertTrue(node.isCovered() || node.isExpanded());
+				if (node.isCovered()) {
+					assertTrue(nodes.contains(node.getCoveringNode().get()));
+				}
+			}
+		} else {
+			assertTrue(result.isUnsafe());
+			assertEquals(cfa.getErrorLoc(), result.asUnsafe().getErrorNode().getLoc());
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+package hu.bme.mit.ca.pred;
+
+import static hu.bme.mit.theta.core.decl.Decls.Var;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.Not;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Gt;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Int;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Lt;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import hu.bme.mit.ca.pred.arg.ArgNode;
+import hu.bme.mit.ca.pred.domain.PredDomain;
+import hu.bme.mit.ca.pred.domain.PredIndex;
+import hu.bme.mit.ca.pred.domain.PredState;
+import hu.bme.mit.theta.cfa.CFA;
+import hu.bme.mit.theta.cfa.dsl.CfaDslManager;
+import hu.bme.mit.theta.core.type.Expr;
+import hu.bme.mit.theta.core.type.booltype.BoolType;
+import hu.bme.mit.theta.core.type.inttype.IntType;
+
+public final class ReachedSetTest {
+
+	private final Expr<IntType> x = Var("x", Int()).getRef();
+	private final Expr<BoolType> p = Gt(x, Int(0));
+	private final Expr<BoolType> q = Lt(x, Int(5));
+	private final Expr<BoolType> r = Gt(x, Int(10));
+
+	@Test
+	public void testCoverCandidates() throws IOException {
+		final InputStream inputStream = new FileInputStream("src/test/resources/counter5_true.cfa");
+		final CFA.Loc loc = CfaDslManager.createCfa(inputStream).getInitLoc();
+		final PredIndex index = PredIndex.create();
+
+		final ArgNode weaker = ArgNode.root(loc, PredState.of(index, Arrays.asList(p)));
+		final ArgNode equal = ArgNode.root(loc, PredState.of(index, Arrays.asList(p, q)));
+		final ArgNode contradicting = ArgNode.root(loc, PredState.of(index, Arrays.asList(p, Not(q))));
+		final ArgNode unrelated = ArgNode.root(loc, PredState.of(index, Arrays.asList(r)));
+
+		final ReachedSet reachedSet = ReachedSet.withSignatureIndex();
+		reachedSet.add(weaker);
+		reachedSet.add(equal);
+		reachedSet.add(contradicting);
+		reachedSet.add(unrelated);
+
+		final ArgNode node = ArgNode.root(loc, PredState.of(index, Arrays.asList(p, q)));
+		assertEquals(Arrays.asList(equal, weaker, contradicting, unrelated),
+				Lists.newArrayList(reachedSet.getCoverCandidates(node)));
+
+		reachedSet.remove(equal);
+		assertEquals(Arrays.asList(weaker, contradicting, unrelated),
+				Lists.newArrayList(reachedSet.getCoverCandidates(node)));
+	}
+
+	@Test
+	public void testSemanticCover() throws IOException {
+		final InputStream inputStream = new FileInputStream("src/test/resources/counter5_true.cfa");
+		final CFA.Loc loc = CfaDslManager.createCfa(inputStream).getInitLoc();
+		final PredIndex index = PredIndex.create();
+		final PredDomain domain = PredDomain.create();
+
+		/* x > 0 holds whenever x > 10 does, but the literals are different */
+		final ArgNode covering = ArgNode.root(loc, PredState.of(index, Arrays.asList(p)));
+		final ArgNode node = ArgNode.root(loc, PredState.of(index, Arrays.asList(r)));
+
+		final ReachedSet reachedSet = ReachedSet.withSignatureIndex();
+		reachedSet.add(covering);
+
+		assertEquals(Arrays.asList(covering), Lists.newArrayList(reachedSet.getCoverCandidates(node)));
+		assertTrue(domain.isLessOrEqual(node.getState(), covering.getState()));
+	}
+
+}
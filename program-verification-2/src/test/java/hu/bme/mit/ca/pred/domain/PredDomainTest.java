@@ -0,0 +1,72 @@
+package hu.bme.mit.ca.pred.domain;
+
+import static hu.bme.mit.theta.core.decl.Decls.Var;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.False;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.Not;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Gt;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Int;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Lt;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import hu.bme.mit.theta.core.type.Expr;
+import hu.bme.mit.theta.core.type.booltype.BoolType;
+import hu.bme.mit.theta.core.type.inttype.IntType;
+
+public final class PredDomainTest {
+
+	private final Expr<IntType> x = Var("x", Int()).getRef();
+	private final Expr<BoolType> positive = Gt(x, Int(0));
+	private final Expr<BoolType> negative = Lt(x, Int(0));
+
+	private final PredIndex index = PredIndex.create();
+	private final PredDomain domain = PredDomain.create();
+
+	@Test
+	public void testInterning() {
+		assertSame(PredState.of(index, Arrays.asList(positive, Not(negative))),
+				PredState.of(index, Arrays.asList(Not(negative), positive)));
+		assertSame(PredState.top(), PredState.of(index, Arrays.asList()));
+		assertNotEquals(PredState.of(index, Arrays.asList(positive)),
+				PredState.of(PredIndex.create(), Arrays.asList(positive)));
+	}
+
+	@Test
+	public void testTop() {
+		assertTrue(domain.isTop(PredState.top()));
+		assertFalse(domain.isBottom(PredState.top()));
+		assertFalse(domain.isTop(PredState.of(index, Arrays.asList(positive))));
+	}
+
+	@Test
+	public void testBottom() {
+		assertFalse(domain.isBottom(PredState.of(index, Arrays.asList(positive))));
+		assertFalse(domain.isBottom(PredState.of(index, Arrays.asList(Not(positive), Not(negative)))));
+
+		/* Checking for False does not number it */
+		assertFalse(index.findId(False()).isPresent());
+
+		assertTrue(domain.isBottom(PredState.of(index, Arrays.asList(False()))));
+		assertTrue(domain.isBottom(PredState.of(index, Arrays.asList(positive, Not(positive)))));
+		assertTrue(domain.isBottom(PredState.of(index, Arrays.asList(positive, negative))));
+	}
+
+	@Test
+	public void testLessOrEqual() {
+		final PredState state1 = PredState.of(index, Arrays.asList(positive, Not(negative)));
+		final PredState state2 = PredState.of(index, Arrays.asList(Not(negative)));
+		final PredState state3 = PredState.of(index, Arrays.asList(negative));
+
+		assertTrue(domain.isLessOrEqual(state1, state2));
+		assertFalse(domain.isLessOrEqual(state2, state1));
+		assertFalse(domain.isLessOrEqual(state1, state3));
+		assertTrue(domain.isLessOrEqual(PredState.of(index, Arrays.asList(positive)), state2));
+	}
+
+}
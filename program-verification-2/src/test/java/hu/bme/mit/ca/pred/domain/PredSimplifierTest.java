@@ -0,0 +1,60 @@
+package hu.bme.mit.ca.pred.domain;
+
+import static hu.bme.mit.theta.core.decl.Decls.Var;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.False;
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.True;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Add;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Eq;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Geq;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Gt;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Int;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Leq;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Lt;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Mul;
+import static hu.bme.mit.theta.core.type.inttype.IntExprs.Sub;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import hu.bme.mit.theta.core.type.Expr;
+import hu.bme.mit.theta.core.type.inttype.IntType;
+
+public final class PredSimplifierTest {
+
+	private final Expr<IntType> x = Var("x", Int()).getRef();
+	private final Expr<IntType> y = Var("y", Int()).getRef();
+
+	@Test
+	public void testCanonize() {
+		assertEquals(PredSimplifier.canonize(Leq(x, Int(4))), PredSimplifier.canonize(Lt(x, Int(5))));
+		assertEquals(PredSimplifier.canonize(Leq(x, Int(4))), PredSimplifier.canonize(Gt(x, Int(4))));
+		assertEquals(PredSimplifier.canonize(Leq(Add(ImmutableList.of(x, y)), Int(0))),
+				PredSimplifier.canonize(Geq(Int(0), Add(ImmutableList.of(y, x)))));
+		assertEquals(PredSimplifier.canonize(Eq(x, y)), PredSimplifier.canonize(Eq(Sub(y, x), Int(0))));
+		assertEquals(PredSimplifier.canonize(Leq(x, Int(1))),
+				PredSimplifier.canonize(Leq(Mul(ImmutableList.of(Int(2), x)), Int(3))));
+	}
+
+	@Test
+	public void testConstant() {
+		assertEquals(True(), PredSimplifier.canonize(Leq(Sub(x, x), Int(0))));
+		assertEquals(False(), PredSimplifier.canonize(Eq(Mul(ImmutableList.of(Int(2), x)), Int(1))));
+	}
+
+	@Test
+	public void testJoin() {
+		final PredSimplifier simplifier = PredSimplifier.create();
+		final PredPrecision precision = PredPrecision.of(Arrays.asList(Lt(x, Int(5))));
+
+		final PredPrecision joined = simplifier.join(precision,
+				PredPrecision.of(Arrays.asList(Leq(x, Int(4)), Gt(x, Int(4)), Eq(x, y), Eq(y, x))));
+
+		assertEquals(2, joined.getPredicates().size());
+		assertEquals(3, simplifier.getEliminated());
+	}
+
+}
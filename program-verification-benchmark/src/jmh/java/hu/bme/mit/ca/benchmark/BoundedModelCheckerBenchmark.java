@@ -0,0 +1,61 @@
+package hu.bme.mit.ca.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import hu.bme.mit.ca.bmc.BmcStatistics;
+import hu.bme.mit.ca.bmc.BoundedModelChecker;
+import hu.bme.mit.ca.bmc.BoundedModelChecker.SearchStrategy;
+import hu.bme.mit.ca.bmc.SafetyResult;
+import hu.bme.mit.theta.cfa.CFA;
+
+@State(Scope.Benchmark)
+public class BoundedModelCheckerBenchmark {
+
+	/* The build passes every model under src/test/resources of both checker modules */
+	@Param("program-verification-1/src/test/resources/ca-ex_false.cfa")
+	public String model;
+
+	@Param
+	public SearchStrategy strategy;
+
+	@Param("30")
+	public int bound;
+
+	@Param("60")
+	public int timeout;
+
+	private CFA cfa;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		cfa = Models.load(model);
+	}
+
+	/* Solver queries of the measured checks, reported next to the time */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Counters {
+		public long solverCalls;
+		public long satCalls;
+	}
+
+	@Benchmark
+	public SafetyResult check(final Counters counters) {
+		final BoundedModelChecker checker = BoundedModelChecker.create(cfa, bound, timeout, strategy, 1, s -> {
+		});
+
+		final SafetyResult result = checker.check();
+
+		final BmcStatistics statistics = checker.getStatistics();
+		counters.solverCalls += statistics.getSolverCalls();
+		counters.satCalls += statistics.getSatCalls();
+		return result;
+	}
+
+}
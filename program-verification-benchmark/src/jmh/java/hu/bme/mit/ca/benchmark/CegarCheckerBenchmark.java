@@ -0,0 +1,58 @@
+package hu.bme.mit.ca.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import hu.bme.mit.ca.pred.CegarChecker;
+import hu.bme.mit.ca.pred.CegarChecker.SearchStrategy;
+import hu.bme.mit.ca.pred.SafetyResult;
+import hu.bme.mit.ca.pred.domain.PredDomain.AbstractionMode;
+import hu.bme.mit.theta.cfa.CFA;
+
+@State(Scope.Benchmark)
+public class CegarCheckerBenchmark {
+
+	/* The build passes every model under src/test/resources of both checker modules */
+	@Param("program-verification-1/src/test/resources/ca-ex_false.cfa")
+	public String model;
+
+	@Param
+	public SearchStrategy strategy;
+
+	@Param
+	public AbstractionMode mode;
+
+	@Param("60")
+	public int timeout;
+
+	private CFA cfa;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		cfa = Models.load(model);
+	}
+
+	/* Solver queries of the measured checks, reported next to the time */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Counters {
+		public long solverCalls;
+	}
+
+	@Benchmark
+	public SafetyResult check(final Counters counters) {
+		final CegarChecker checker = CegarChecker.builder(cfa, strategy).timeout(timeout).abstractionMode(mode)
+				.build();
+
+		final SafetyResult result = checker.check();
+
+		counters.solverCalls += checker.getSolverCalls();
+		return result;
+	}
+
+}
@@ -0,0 +1,31 @@
+package hu.bme.mit.ca.benchmark;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import hu.bme.mit.theta.cfa.CFA;
+import hu.bme.mit.theta.cfa.dsl.CfaDslManager;
+
+/*
+ * Models are given relative to the repository root, which is passed in the
+ * ca.root system property by the build.
+ */
+final class Models {
+
+	private Models() {
+	}
+
+	public static CFA load(final String model) {
+		final Path path = Paths.get(System.getProperty("ca.root", "..")).resolve(model);
+		try (InputStream inputStream = new FileInputStream(path.toFile())) {
+			return CfaDslManager.createCfa(inputStream);
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+package hu.bme.mit.ca.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Cooperative cancellation flag with an optional deadline. A token derived
+ * with withTimeout is cancelled when its own deadline passes or when any of
+ * its ancestors is cancelled. Hot loops poll it between solver calls.
+ */
+public final class CancellationToken {
+
+	private final CancellationToken parent;
+	private final boolean hasDeadline;
+	private final long deadline;
+
+	private volatile boolean cancelled;
+
+	private CancellationToken(final CancellationToken parent, final boolean hasDeadline, final long deadline) {
+		this.parent = parent;
+		this.hasDeadline = hasDeadline;
+		this.deadline = deadline;
+		this.cancelled = false;
+	}
+
+	public static CancellationToken create() {
+		return new CancellationToken(null, false, 0);
+	}
+
+	public CancellationToken withTimeout(final long timeout, final TimeUnit unit) {
+		checkArgument(timeout >= 0);
+		checkNotNull(unit);
+		return new CancellationToken(this, true, System.nanoTime() + unit.toNanos(timeout));
+	}
+
+	////
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		if (cancelled) {
+			return true;
+		} else if (hasDeadline && System.nanoTime() - deadline >= 0) {
+			return true;
+		} else {
+			return parent != null && parent.isCancelled();
+		}
+	}
+
+	public void throwIfCancelled() {
+		if (isCancelled()) {
+			throw new CancellationException();
+		}
+	}
+
+}
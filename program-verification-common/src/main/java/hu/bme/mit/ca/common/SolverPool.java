@@ -0,0 +1,319 @@
+package hu.bme.mit.ca.common;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import hu.bme.mit.theta.solver.ItpSolver;
+import hu.bme.mit.theta.solver.Solver;
+import hu.bme.mit.theta.solver.z3.Z3SolverFactory;
+
+/*
+ * Solvers and interpolating solvers kept for reuse, so that checks running
+ * one after another do not each set up new Z3 contexts. A solver is leased
+ * for a check and reset to an empty assertion stack when the lease is
+ * closed. Resetting keeps the context with the symbols declared in it, so a
+ * solver is closed instead of reset after maxUses leases and a new one is
+ * created on demand. At most maxIdle solvers of each kind are kept, the most
+ * recently returned ones are leased first, and solvers idle for longer than
+ * the idle timeout are closed.
+ *
+ * At most maxLive solvers exist at a time, leased or idle. An acquire over
+ * the limit closes an idle solver if there is one, and waits for a lease to
+ * be closed otherwise, until the token of the caller is cancelled. Checkers
+ * reject configurations needing more than maxLive leases at once, but
+ * concurrent checks may still have to wait for each other.
+ */
+public final class SolverPool {
+	private static final int DEFAULT_MAX_IDLE = 2 * Runtime.getRuntime().availableProcessors();
+	private static final int DEFAULT_MAX_LIVE = 16 * Runtime.getRuntime().availableProcessors();
+	private static final int DEFAULT_MAX_USES = 32;
+	private static final long DEFAULT_IDLE_TIMEOUT = 60;
+	private static final long PERMIT_WAIT_MILLIS = 100;
+	private static final long DEFAULT_MAX_WAIT = 60;
+	private static final SolverPool DEFAULT = create(DEFAULT_MAX_IDLE, DEFAULT_MAX_LIVE, DEFAULT_MAX_USES,
+			DEFAULT_IDLE_TIMEOUT, TimeUnit.SECONDS);
+
+	private final int maxIdle;
+	private final int maxLive;
+	private final int maxUses;
+	private final long idleTimeout;
+	private final Semaphore permits;
+	private final Deque<IdleSolver<Solver>> idleSolvers;
+	private final Deque<IdleSolver<ItpSolver>> idleItpSolvers;
+
+	private long created;
+	private long reused;
+	private long closed;
+
+	private SolverPool(final int maxIdle, final int maxLive, final int maxUses, final long idleTimeout,
+			final TimeUnit unit) {
+		checkArgument(maxIdle >= 0);
+		checkArgument(maxLive >= 1);
+		checkArgument(maxUses >= 1);
+		checkArgument(idleTimeout >= 0);
+		this.maxIdle = maxIdle;
+		this.maxLive = maxLive;
+		this.maxUses = maxUses;
+		this.idleTimeout = unit.toNanos(idleTimeout);
+		permits = new Semaphore(maxLive);
+		idleSolvers = new ArrayDeque<>();
+		idleItpSolvers = new ArrayDeque<>();
+		created = 0;
+		reused = 0;
+		closed = 0;
+	}
+
+	public static SolverPool create(final int maxIdle, final long idleTimeout, final TimeUnit unit) {
+		return create(maxIdle, DEFAULT_MAX_LIVE, DEFAULT_MAX_USES, idleTimeout, unit);
+	}
+
+	public static SolverPool create(final int maxIdle, final int maxLive, final int maxUses, final long idleTimeout,
+			final TimeUnit unit) {
+		checkNotNull(unit);
+		return new SolverPool(maxIdle, maxLive, maxUses, idleTimeout, unit);
+	}
+
+	/* Shared by the checkers of every module */
+	public static SolverPool getDefault() {
+		return DEFAULT;
+	}
+
+	////
+
+	/* Waits at most a minute for a solver over the limit */
+	public Lease<Solver> acquire() {
+		return acquire(defaultToken());
+	}
+
+	public Lease<ItpSolver> acquireItp() {
+		return acquireItp(defaultToken());
+	}
+
+	/* Throws CancellationException if the token is cancelled while waiting for a solver over the limit */
+	public Lease<Solver> acquire(final CancellationToken token) {
+		return acquire(idleSolvers, () -> Z3SolverFactory.getInstace().createSolver(), token);
+	}
+
+	public Lease<ItpSolver> acquireItp(final CancellationToken token) {
+		return acquire(idleItpSolvers, () -> Z3SolverFactory.getInstace().createItpSolver(), token);
+	}
+
+	private static CancellationToken defaultToken() {
+		return CancellationToken.create().withTimeout(DEFAULT_MAX_WAIT, TimeUnit.SECONDS);
+	}
+
+	private <S extends Solver> Lease<S> acquire(final Deque<IdleSolver<S>> idle, final Supplier<S> factory,
+			final CancellationToken token) {
+		checkNotNull(token);
+		synchronized (this) {
+			evictIdle();
+			final IdleSolver<S> idleSolver = idle.pollFirst();
+			if (idleSolver != null) {
+				reused++;
+				return new Lease<>(idleSolver.solver, idleSolver.uses + 1, idle);
+			}
+		}
+
+		acquirePermit(token);
+		final S solver;
+		try {
+			solver = factory.get();
+		} catch (final RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+		synchronized (this) {
+			created++;
+		}
+		return new Lease<>(solver, 1, idle);
+	}
+
+	/* Idle solvers are closed to make room, the timed wait sees returned solvers and polls the token */
+	private void acquirePermit(final CancellationToken token) {
+		try {
+			while (!permits.tryAcquire()) {
+				if (!closeOldestIdle() && permits.tryAcquire(PERMIT_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+				token.throwIfCancelled();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException();
+		}
+	}
+
+	/* A solver that was leased maxUses times or cannot be reset is closed */
+	private <S extends Solver> void release(final S solver, final int uses, final Deque<IdleSolver<S>> idle) {
+		if (uses >= maxUses) {
+			close(solver);
+			return;
+		}
+
+		try {
+			solver.reset();
+		} catch (final RuntimeException e) {
+			close(solver);
+			return;
+		}
+
+		final boolean kept;
+		synchronized (this) {
+			evictIdle();
+			kept = idle.size() < maxIdle && !permits.hasQueuedThreads();
+			if (kept) {
+				idle.addFirst(new IdleSolver<>(solver, uses, System.nanoTime()));
+			}
+		}
+		if (!kept) {
+			close(solver);
+		}
+	}
+
+	public synchronized void evictIdle() {
+		final long now = System.nanoTime();
+		evictIdle(idleSolvers, now);
+		evictIdle(idleItpSolvers, now);
+	}
+
+	/* Idle solvers are ordered by the time they were returned, the oldest last */
+	private <S extends Solver> void evictIdle(final Deque<IdleSolver<S>> idle, final long now) {
+		while (!idle.isEmpty() && now - idle.peekLast().since >= idleTimeout) {
+			close(idle.pollLast().solver);
+		}
+	}
+
+	private synchronized boolean closeOldestIdle() {
+		final IdleSolver<?> oldest;
+		if (idleSolvers.isEmpty()) {
+			oldest = idleItpSolvers.pollLast();
+		} else if (idleItpSolvers.isEmpty() || idleSolvers.peekLast().since <= idleItpSolvers.peekLast().since) {
+			oldest = idleSolvers.pollLast();
+		} else {
+			oldest = idleItpSolvers.pollLast();
+		}
+
+		if (oldest == null) {
+			return false;
+		}
+		close(oldest.solver);
+		return true;
+	}
+
+	public synchronized void clear() {
+		while (!idleSolvers.isEmpty()) {
+			close(idleSolvers.pollLast().solver);
+		}
+		while (!idleItpSolvers.isEmpty()) {
+			close(idleItpSolvers.pollLast().solver);
+		}
+	}
+
+	/*
+	 * The solvers of Theta do not implement AutoCloseable yet, their Z3
+	 * context is then freed when the solver is collected. Either way, the
+	 * solver no longer counts as live.
+	 */
+	private void close(final Solver solver) {
+		try {
+			if (solver instanceof AutoCloseable) {
+				((AutoCloseable) solver).close();
+			}
+		} catch (final Exception e) {
+			/* The solver is dropped anyway */
+		} finally {
+			synchronized (this) {
+				closed++;
+			}
+			permits.release();
+		}
+	}
+
+	////
+
+	public int getMaxLive() {
+		return maxLive;
+	}
+
+	public synchronized int getIdleCount() {
+		return idleSolvers.size() + idleItpSolvers.size();
+	}
+
+	/* Leased and idle solvers */
+	public int getLiveCount() {
+		return maxLive - permits.availablePermits();
+	}
+
+	public synchronized int getLeasedCount() {
+		return getLiveCount() - getIdleCount();
+	}
+
+	public synchronized long getCreatedCount() {
+		return created;
+	}
+
+	public synchronized long getReusedCount() {
+		return reused;
+	}
+
+	public synchronized long getClosedCount() {
+		return closed;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SolverPool{idle=" + getIdleCount() + ", live=" + getLiveCount() + ", maxIdle=" + maxIdle
+				+ ", maxLive=" + maxLive + ", created=" + created + ", reused=" + reused + ", closed=" + closed + "}";
+	}
+
+	////
+
+	private static final class IdleSolver<S extends Solver> {
+		private final S solver;
+		private final int uses;
+		private final long since;
+
+		private IdleSolver(final S solver, final int uses, final long since) {
+			this.solver = solver;
+			this.uses = uses;
+			this.since = since;
+		}
+	}
+
+	/* Returns the solver to the pool when closed, closing it again has no effect */
+	public final class Lease<S extends Solver> implements AutoCloseable {
+		private final S solver;
+		private final int uses;
+		private final Deque<IdleSolver<S>> idle;
+		private final AtomicBoolean closed;
+
+		private Lease(final S solver, final int uses, final Deque<IdleSolver<S>> idle) {
+			this.solver = checkNotNull(solver);
+			this.uses = uses;
+			this.idle = idle;
+			closed = new AtomicBoolean(false);
+		}
+
+		public S get() {
+			checkState(!closed.get());
+			return solver;
+		}
+
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				release(solver, uses, idle);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package hu.bme.mit.ca.common;
+
+import static hu.bme.mit.theta.core.type.booltype.BoolExprs.False;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import hu.bme.mit.theta.solver.Solver;
+
+public final class SolverPoolTest {
+
+	@Test
+	public void testReuse() {
+		final SolverPool pool = SolverPool.create(1, 1, TimeUnit.MINUTES);
+
+		final Solver solver;
+		try (SolverPool.Lease<Solver> lease = pool.acquire()) {
+			solver = lease.get();
+			solver.add(False());
+			assertTrue(solver.check().isUnsat());
+		}
+		assertEquals(1, pool.getIdleCount());
+
+		try (SolverPool.Lease<Solver> lease = pool.acquire()) {
+			assertSame(solver, lease.get());
+			assertTrue(lease.get().check().isSat());
+		}
+		assertEquals(1, pool.getCreatedCount());
+		assertEquals(1, pool.getReusedCount());
+	}
+
+	@Test
+	public void testMaxIdle() {
+		final SolverPool pool = SolverPool.create(1, 1, TimeUnit.MINUTES);
+
+		final SolverPool.Lease<Solver> first = pool.acquire();
+		final SolverPool.Lease<Solver> second = pool.acquire();
+		first.close();
+		second.close();
+		second.close();
+
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(2, pool.getCreatedCount());
+	}
+
+	@Test
+	public void testIdleTimeout() {
+		final SolverPool pool = SolverPool.create(1, 0, TimeUnit.SECONDS);
+		pool.acquire().close();
+		pool.evictIdle();
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(0, pool.getLiveCount());
+		assertEquals(1, pool.getClosedCount());
+	}
+
+	@Test
+	public void testMaxUses() {
+		final SolverPool pool = SolverPool.create(1, 4, 2, 1, TimeUnit.MINUTES);
+
+		final Solver solver;
+		try (SolverPool.Lease<Solver> lease = pool.acquire()) {
+			solver = lease.get();
+		}
+		try (SolverPool.Lease<Solver> lease = pool.acquire()) {
+			assertSame(solver, lease.get());
+		}
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(1, pool.getClosedCount());
+
+		try (SolverPool.Lease<Solver> lease = pool.acquire()) {
+			assertNotSame(solver, lease.get());
+		}
+		assertEquals(2, pool.getCreatedCount());
+	}
+
+	@Test
+	public void testMaxLive() {
+		final SolverPool pool = SolverPool.create(1, 2, 10, 1, TimeUnit.MINUTES);
+
+		final SolverPool.Lease<Solver> first = pool.acquire();
+		pool.acquireItp().close();
+		assertEquals(2, pool.getLiveCount());
+
+		/* The idle interpolating solver is closed to make room */
+		final SolverPool.Lease<Solver> second = pool.acquire();
+		assertEquals(2, pool.getLiveCount());
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(2, pool.getLeasedCount());
+
+		first.close();
+		second.close();
+		pool.clear();
+		assertEquals(0, pool.getLiveCount());
+		assertEquals(3, pool.getClosedCount());
+	}
+
+	@Test(expected = CancellationException.class)
+	public void testMaxLiveCancelled() {
+		final SolverPool pool = SolverPool.create(1, 1, 10, 1, TimeUnit.MINUTES);
+		final CancellationToken token = CancellationToken.create().withTimeout(200, TimeUnit.MILLISECONDS);
+
+		try (SolverPool.Lease<Solver> lease = pool.acquire(token)) {
+			pool.acquire(token);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testClosed() {
+		final SolverPool pool = SolverPool.create(1, 1, TimeUnit.MINUTES);
+		final SolverPool.Lease<Solver> lease = pool.acquire();
+		lease.close();
+		lease.get();
+	}
+
+}
@@ -0,0 +1,188 @@
+package hu.bme.mit.ca.portfolio;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import hu.bme.mit.ca.bmc.BoundedModelChecker;
+import hu.bme.mit.ca.pred.CegarChecker;
+import hu.bme.mit.theta.cfa.CFA;
+
+/*
+ * Runs several engines on the same model in parallel, each on its own thread
+ * with its own solvers and its own CFA, and returns the first SAFE or UNSAFE
+ * verdict. The remaining engines are cancelled.
+ */
+public final class PortfolioChecker implements SafetyChecker {
+
+	private final Supplier<List<Engine>> engineFactory;
+
+	private volatile List<Engine> engines;
+	private volatile Engine winner;
+	private volatile boolean cancelled;
+
+	private PortfolioChecker(final Supplier<List<Engine>> engineFactory) {
+		this.engineFactory = checkNotNull(engineFactory);
+		this.engines = ImmutableList.of();
+		this.winner = null;
+		this.cancelled = false;
+	}
+
+	/*
+	 * BMC together with CEGAR in breadth-first and depth-first order. The
+	 * variables of a CFA index their constants lazily without synchronization,
+	 * so the factory has to return a new CFA, e.g. parsed again, for every engine.
+	 */
+	public static PortfolioChecker create(final Supplier<CFA> cfaFactory, final int bound, final int timeout) {
+		checkNotNull(cfaFactory);
+		return create(() -> ImmutableList.of(Engine.bmc(cfaFactory.get(), bound, timeout),
+				Engine.cegar(cfaFactory.get(), CegarChecker.SearchStrategy.BREADTH_FIRST, timeout),
+				Engine.cegar(cfaFactory.get(), CegarChecker.SearchStrategy.DEPTH_FIRST, timeout)));
+	}
+
+	/* Engines are single-use, so the factory is called at every check */
+	public static PortfolioChecker create(final Supplier<List<Engine>> engineFactory) {
+		return new PortfolioChecker(engineFactory);
+	}
+
+	/* Name of the engine that gave the verdict of the last check */
+	public Optional<String> getWinner() {
+		return Optional.ofNullable(winner).map(Engine::getName);
+	}
+
+	/* Stops the running check and every later check of this checker with TIMEOUT */
+	public void cancel() {
+		cancelled = true;
+		engines.forEach(Engine::cancel);
+	}
+
+	/*
+	 * Without a definitive verdict the result is UNKNOWN if any engine
+	 * returned UNKNOWN, TIMEOUT otherwise. An engine that fails gives no
+	 * verdict, the first failure is only rethrown if every engine failed.
+	 */
+	@Override
+	public SafetyResult check() {
+		winner = null;
+
+		final List<Engine> engines = ImmutableList.copyOf(engineFactory.get());
+		checkArgument(!engines.isEmpty());
+		this.engines = engines;
+		if (cancelled) {
+			return SafetyResult.TIMEOUT;
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(engines.size());
+		final CompletionService<SafetyResult> completion = new ExecutorCompletionService<>(executor);
+		final List<Future<SafetyResult>> futures = new ArrayList<>(engines.size());
+
+		try {
+			for (final Engine engine : engines) {
+				futures.add(completion.submit(engine::check));
+			}
+
+			boolean unknown = false;
+			int failures = 0;
+			ExecutionException failure = null;
+
+			for (int i = 0; i < futures.size(); i++) {
+				final Future<SafetyResult> future = completion.take();
+				final Engine engine = engines.get(futures.indexOf(future));
+
+				try {
+					final SafetyResult result = future.get();
+					if (result.isDefinitive()) {
+						winner = engine;
+						return result;
+					} else if (result == SafetyResult.UNKNOWN) {
+						unknown = true;
+					}
+				} catch (final ExecutionException e) {
+					failures++;
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+
+			if (failures == futures.size()) {
+				throw new UncheckedExecutionException(failure.getCause());
+			}
+			return unknown ? SafetyResult.UNKNOWN : SafetyResult.TIMEOUT;
+
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return SafetyResult.TIMEOUT;
+		} finally {
+			engines.forEach(Engine::cancel);
+			executor.shutdownNow();
+		}
+	}
+
+	////
+
+	/* A checker of one of the modules, with its verdict mapped to SafetyResult */
+	public static final class Engine {
+		private final String name;
+		private final Supplier<SafetyResult> check;
+		private final Runnable cancel;
+
+		private Engine(final String name, final Supplier<SafetyResult> check, final Runnable cancel) {
+			this.name = checkNotNull(name);
+			this.check = checkNotNull(check);
+			this.cancel = checkNotNull(cancel);
+		}
+
+		public static Engine of(final String name, final Supplier<SafetyResult> check, final Runnable cancel) {
+			return new Engine(name, check, cancel);
+		}
+
+		public static Engine bmc(final CFA cfa, final int bound, final int timeout) {
+			final BoundedModelChecker checker = BoundedModelChecker.create(cfa, bound, timeout);
+			return of("BMC", () -> SafetyResult.valueOf(checker.check().name()), checker::cancel);
+		}
+
+		public static Engine cegar(final CFA cfa, final CegarChecker.SearchStrategy strategy, final int timeout) {
+			final CegarChecker checker = CegarChecker.builder(cfa, strategy).timeout(timeout).build();
+			return of("CEGAR " + strategy, () -> convert(checker.check()), checker::cancel);
+		}
+
+		private static SafetyResult convert(final hu.bme.mit.ca.pred.SafetyResult result) {
+			if (result.isSafe()) {
+				return SafetyResult.SAFE;
+			} else if (result.isUnsafe()) {
+				return SafetyResult.UNSAFE;
+			} else if (result.isTimeout()) {
+				return SafetyResult.TIMEOUT;
+			} else {
+				return SafetyResult.UNKNOWN;
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		SafetyResult check() {
+			return check.get();
+		}
+
+		void cancel() {
+			cancel.run();
+		}
+	}
+
+}
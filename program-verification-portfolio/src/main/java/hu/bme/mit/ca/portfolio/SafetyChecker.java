@@ -0,0 +1,7 @@
+package hu.bme.mit.ca.portfolio;
+
+public interface SafetyChecker {
+
+	SafetyResult check();
+
+}
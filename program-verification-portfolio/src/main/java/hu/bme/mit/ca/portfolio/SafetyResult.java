@@ -0,0 +1,11 @@
+package hu.bme.mit.ca.portfolio;
+
+public enum SafetyResult {
+
+	SAFE, UNSAFE, UNKNOWN, TIMEOUT;
+
+	public boolean isDefinitive() {
+		return this == SAFE || this == UNSAFE;
+	}
+
+}
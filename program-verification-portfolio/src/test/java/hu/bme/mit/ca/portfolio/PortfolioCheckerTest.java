@@ -0,0 +1,79 @@
+package hu.bme.mit.ca.portfolio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import hu.bme.mit.theta.cfa.CFA;
+import hu.bme.mit.theta.cfa.dsl.CfaDslManager;
+
+@RunWith(value = Parameterized.class)
+public final class PortfolioCheckerTest {
+
+	@Parameter(value = 0)
+	public String filepath;
+
+	@Parameter(value = 1)
+	public SafetyResult expected;
+
+	@Parameters(name = "{index}: {0}, {1}")
+	public static Collection<Object[]> data() {
+		return Arrays.asList(new Object[][] {
+
+				{ "../program-verification-2/src/test/resources/ca-ex_false.cfa", SafetyResult.UNSAFE },
+
+				{ "../program-verification-2/src/test/resources/counter5_false.cfa", SafetyResult.UNSAFE },
+
+				{ "../program-verification-2/src/test/resources/counter5_true.cfa", SafetyResult.SAFE },
+
+				{ "../program-verification-2/src/test/resources/gcd_true.cfa", SafetyResult.SAFE },
+
+				{ "../program-verification-2/src/test/resources/locking_true.cfa", SafetyResult.SAFE },
+
+		});
+	}
+
+	@Test
+	public void test() {
+		final PortfolioChecker checker = PortfolioChecker.create(this::parse, 30, 60);
+
+		assertEquals(expected, checker.check());
+		assertTrue(checker.getWinner().isPresent());
+
+		/* Engines are recreated, so a second check gives the same verdict */
+		assertEquals(expected, checker.check());
+	}
+
+	@Test
+	public void testCancelled() {
+		final PortfolioChecker checker = PortfolioChecker.create(this::parse, 30, 60);
+
+		checker.cancel();
+
+		assertEquals(SafetyResult.TIMEOUT, checker.check());
+		assertFalse(checker.getWinner().isPresent());
+	}
+
+	/* Every engine gets its own CFA */
+	private CFA parse() {
+		try (final InputStream inputStream = new FileInputStream(filepath)) {
+			return CfaDslManager.createCfa(inputStream);
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}